@@ -0,0 +1,190 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import model.dao.impl.SellerRowMapperBench;
+
+/*
+ * Runs the benchmark suites and writes the results as CSV and JSON, so runs
+ * can be compared (and regressions caught) by a script.
+ *
+ * Arguments, all optional:
+ *   -f <text>      only cases whose "suite.case" contains the text
+ *   -w <n>         warm up iterations (default 5)
+ *   -i <n>         measured iterations (default 10)
+ *   -t <ms>        length of each iteration (default 500)
+ *   -o <dir>       where the result files go (default bench-results)
+ *
+ * Each iteration calls the operation in a loop until the time is up, and
+ * the iteration's score is the elapsed time divided by the calls made.
+ */
+public class BenchRunner {
+
+	private int warmup = 5;
+	private int iterations = 10;
+	private long iterationMillis = 500;
+	private String filter;
+	private Path outputDir = Paths.get("bench-results");
+
+	// everything returned by the operations ends up here
+	private static volatile int sink;
+
+	public static void main(String[] args) throws IOException {
+		BenchRunner runner = new BenchRunner();
+		runner.parse(args);
+		List<Result> results = runner.run(Arrays.asList(new SellerRowMapperBench(), new SellerServiceBench(),
+				new CellFormattingBench(), new ConstraintsBench()));
+		runner.export(results);
+		System.exit(0); // the FX toolkit and the pool threads would keep the JVM alive
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-f":
+				filter = value;
+				break;
+			case "-w":
+				warmup = Integer.parseInt(value);
+				break;
+			case "-i":
+				iterations = Integer.parseInt(value);
+				break;
+			case "-t":
+				iterationMillis = Long.parseLong(value);
+				break;
+			case "-o":
+				outputDir = Paths.get(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+	}
+
+	public List<Result> run(List<Suite> suites) {
+		List<Result> results = new ArrayList<>();
+		for (Suite suite : suites) {
+			List<Case> cases = new ArrayList<>();
+			for (Case c : suite.cases()) {
+				if (filter == null || (suite.getName() + "." + c.getName()).contains(filter))
+					cases.add(c);
+			}
+			if (cases.isEmpty())
+				continue;
+			try {
+				suite.setUp();
+			} catch (Exception e) {
+				System.out.println(suite.getName() + " skipped: " + e);
+				continue;
+			}
+			try {
+				for (Case c : cases) {
+					try {
+						Result result = measure(suite, c);
+						System.out.println(result);
+						results.add(result);
+					} catch (Exception e) {
+						System.out.println(suite.getName() + "." + c.getName() + " failed: " + e);
+					}
+				}
+			} finally {
+				try {
+					suite.tearDown();
+				} catch (Exception e) {
+					System.out.println(suite.getName() + " tear down failed: " + e);
+				}
+			}
+		}
+		return results;
+	}
+
+	private Result measure(Suite suite, Case c) throws Exception {
+		for (int i = 0; i < warmup; i++)
+			iteration(c.getOp());
+		double[] scores = new double[iterations];
+		long ops = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] iteration = iteration(c.getOp());
+			scores[i] = (double) iteration[0] / iteration[1];
+			ops += iteration[1];
+		}
+		double mean = 0;
+		double min = Double.MAX_VALUE;
+		for (double score : scores) {
+			mean += score;
+			min = Math.min(min, score);
+		}
+		mean /= scores.length;
+		double variance = 0;
+		for (double score : scores)
+			variance += (score - mean) * (score - mean);
+		double stdDev = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+		return new Result(suite.getName(), c.getName(), c.getParam(), mean, stdDev, min, ops, scores.length);
+	}
+
+	// {elapsed nanos, operations}
+	private long[] iteration(Case.Op op) throws Exception {
+		long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+		long start = System.nanoTime();
+		long count = 0;
+		long now;
+		int local = 0;
+		do {
+			Object value = op.run();
+			local += value == null ? 0 : value.hashCode();
+			count++;
+			now = System.nanoTime();
+		} while (now < deadline);
+		sink += local;
+		return new long[] { now - start, count };
+	}
+
+	private void export(List<Result> results) throws IOException {
+		Files.createDirectories(outputDir);
+		String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		Path csv = outputDir.resolve("bench-" + stamp + ".csv");
+		Path json = outputDir.resolve("bench-" + stamp + ".json");
+
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+			out.println("suite,case,param,ns_per_op,stddev,min_ns_per_op,ops_per_s,ops,iterations");
+			for (Result r : results) {
+				out.println(String.format(Locale.ROOT, "%s,%s,%s,%.3f,%.3f,%.3f,%.3f,%d,%d", r.getSuite(), r.getName(),
+						r.getParam(), r.getNsPerOp(), r.getStdDev(), r.getMinNsPerOp(), r.getOpsPerSecond(), r.getOps(),
+						r.getIterations()));
+			}
+		}
+
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(json, StandardCharsets.UTF_8))) {
+			out.println("{");
+			out.println(String.format(Locale.ROOT,
+					"  \"timestamp\": \"%s\", \"java\": \"%s\", \"warmup\": %d, \"iterations\": %d, \"iterationMs\": %d,",
+					stamp, System.getProperty("java.version"), warmup, iterations, iterationMillis));
+			out.println("  \"results\": [");
+			for (int i = 0; i < results.size(); i++) {
+				Result r = results.get(i);
+				out.print(String.format(Locale.ROOT,
+						"    {\"suite\": \"%s\", \"case\": \"%s\", \"param\": \"%s\", \"nsPerOp\": %.3f, \"stdDev\": %.3f, "
+								+ "\"minNsPerOp\": %.3f, \"opsPerSecond\": %.3f, \"ops\": %d, \"iterations\": %d}",
+						r.getSuite(), r.getName(), r.getParam(), r.getNsPerOp(), r.getStdDev(), r.getMinNsPerOp(),
+						r.getOpsPerSecond(), r.getOps(), r.getIterations()));
+				out.println(i + 1 < results.size() ? "," : "");
+			}
+			out.println("  ]");
+			out.println("}");
+		}
+		System.out.println("Results written to " + csv + " and " + json);
+	}
+}
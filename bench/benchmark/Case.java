@@ -0,0 +1,34 @@
+package benchmark;
+
+/*
+ * One measured operation. The value returned by the operation is consumed
+ * by the runner, so the JIT can't drop the work as dead code.
+ */
+public class Case {
+
+	public interface Op {
+		Object run() throws Exception;
+	}
+
+	private final String name;
+	private final String param;
+	private final Op op;
+
+	public Case(String name, String param, Op op) {
+		this.name = name;
+		this.param = param == null ? "" : param;
+		this.op = op;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getParam() {
+		return param;
+	}
+
+	public Op getOp() {
+		return op;
+	}
+}
@@ -0,0 +1,96 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import gui.util.Utils;
+import javafx.collections.FXCollections;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+ * Cost of the cells made by Utils.formatTableColumnDouble and
+ * formatTableColumnDate when the table scrolls: each operation moves one
+ * cell to the next row, which reads the value and formats it, the same as
+ * the virtual flow does for every visible cell.
+ */
+public class CellFormattingBench extends Suite {
+
+	private static final int ROWS = 1000;
+
+	private TableView<Seller> table;
+	private TableColumn<Seller, Double> salaryColumn;
+	private TableColumn<Seller, Date> birthDateColumn;
+
+	@Override
+	public String getName() {
+		return "CellFormatting";
+	}
+
+	@Override
+	public void setUp() throws InterruptedException {
+		FxToolkit.start();
+		List<Seller> list = new ArrayList<>(ROWS);
+		Department dep = new Department(1, "Books");
+		for (int i = 0; i < ROWS; i++)
+			list.add(new Seller(i + 1, "Seller " + i, "seller" + i + "@gmail.com",
+					new Date(315532800000L + i * 86400000L), 1000.0 + i * 1.25, dep));
+		table = new TableView<>(FXCollections.observableArrayList(list));
+
+		salaryColumn = new TableColumn<>("Base Salary");
+		salaryColumn.setCellValueFactory(new PropertyValueFactory<>("baseSalary"));
+		Utils.formatTableColumnDouble(salaryColumn, 2);
+
+		birthDateColumn = new TableColumn<>("Birthdate");
+		birthDateColumn.setCellValueFactory(new PropertyValueFactory<>("birthDate"));
+		Utils.formatTableColumnDate(birthDateColumn, "dd/MM/yyyy");
+
+		table.getColumns().add(salaryColumn);
+		table.getColumns().add(birthDateColumn);
+	}
+
+	@Override
+	public List<Case> cases() {
+		return Arrays.asList(
+				new Case("doubleCellUpdate", "2 places", scrolling(() -> salaryColumn)),
+				new Case("dateCellUpdate", "dd/MM/yyyy", scrolling(() -> birthDateColumn)),
+				new Case("dateCellCreate", "dd/MM/yyyy",
+						() -> birthDateColumn.getCellFactory().call(birthDateColumn)));
+	}
+
+	private interface ColumnRef<T> {
+		TableColumn<Seller, T> get();
+	}
+
+	// a cell (and its row) walking down the table, one row per call
+	private <T> Case.Op scrolling(ColumnRef<T> column) {
+		return new Case.Op() {
+			private TableRow<Seller> row;
+			private TableCell<Seller, T> cell;
+			private int index;
+
+			@Override
+			public Object run() {
+				if (cell == null) {
+					row = new TableRow<>();
+					row.updateTableView(table);
+					cell = column.get().getCellFactory().call(column.get());
+					cell.updateTableView(table);
+					cell.updateTableColumn(column.get());
+					cell.updateTableRow(row);
+				}
+				index = (index + 1) % ROWS;
+				row.updateIndex(index);
+				cell.updateIndex(index);
+				return cell.getText();
+			}
+		};
+	}
+}
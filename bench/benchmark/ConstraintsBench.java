@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import gui.util.Constraints;
+import javafx.scene.control.TextField;
+
+/*
+ * Cost of the Constraints text field validators, which run on every key
+ * the user types. Each operation types a whole value one character at a
+ * time, the plain field being the baseline.
+ */
+public class ConstraintsBench extends Suite {
+
+	private TextField plain;
+	private TextField integer;
+	private TextField decimal;
+	private TextField maxLength;
+
+	@Override
+	public String getName() {
+		return "Constraints";
+	}
+
+	@Override
+	public void setUp() throws InterruptedException {
+		FxToolkit.start();
+		plain = new TextField();
+		integer = new TextField();
+		Constraints.setTextFieldInteger(integer);
+		decimal = new TextField();
+		Constraints.setTextFieldDouble(decimal);
+		maxLength = new TextField();
+		Constraints.setTextFieldMaxLength(maxLength, 30);
+	}
+
+	@Override
+	public List<Case> cases() {
+		return Arrays.asList(
+				new Case("baseline", "12345.67", () -> type(plain, "12345.67")),
+				new Case("integer", "1234567", () -> type(integer, "1234567")),
+				new Case("integerRejected", "12a4", () -> type(integer, "12a4")),
+				new Case("double", "12345.67", () -> type(decimal, "12345.67")),
+				new Case("doubleRejected", "12.3.4", () -> type(decimal, "12.3.4")),
+				new Case("maxLength", "30 chars", () -> type(maxLength, "Maria Aparecida Souza da Silva")));
+	}
+
+	private static String type(TextField field, String text) {
+		field.setText("");
+		for (int i = 1; i <= text.length(); i++)
+			field.setText(text.substring(0, i));
+		return field.getText();
+	}
+}
@@ -0,0 +1,37 @@
+package benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+
+/*
+ * Starts the JavaFX toolkit once for the suites that create controls. The
+ * controls are never shown, so they can be used from the benchmark thread.
+ */
+class FxToolkit {
+
+	private static boolean started;
+	// a failed startup can't be retried, every later suite gets the same error
+	private static RuntimeException failure;
+
+	static synchronized void start() throws InterruptedException {
+		if (started)
+			return;
+		if (failure != null)
+			throw failure;
+		CountDownLatch latch = new CountDownLatch(1);
+		try {
+			Platform.startup(latch::countDown);
+		} catch (IllegalStateException e) {
+			latch.countDown(); // already running
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		}
+		if (!latch.await(10, TimeUnit.SECONDS))
+			throw new IllegalStateException("JavaFX toolkit did not start");
+		Platform.setImplicitExit(false);
+		started = true;
+	}
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.util.Locale;
+
+/*
+ * Measurement of one case: average time per operation over the measured
+ * iterations, with its standard deviation and the best iteration.
+ */
+public class Result {
+
+	private final String suite;
+	private final String name;
+	private final String param;
+	private final double nsPerOp;
+	private final double stdDev;
+	private final double minNsPerOp;
+	private final long ops;
+	private final int iterations;
+
+	public Result(String suite, String name, String param, double nsPerOp, double stdDev, double minNsPerOp,
+			long ops, int iterations) {
+		this.suite = suite;
+		this.name = name;
+		this.param = param;
+		this.nsPerOp = nsPerOp;
+		this.stdDev = stdDev;
+		this.minNsPerOp = minNsPerOp;
+		this.ops = ops;
+		this.iterations = iterations;
+	}
+
+	public String getSuite() {
+		return suite;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getParam() {
+		return param;
+	}
+
+	public double getNsPerOp() {
+		return nsPerOp;
+	}
+
+	public double getStdDev() {
+		return stdDev;
+	}
+
+	public double getMinNsPerOp() {
+		return minNsPerOp;
+	}
+
+	public double getOpsPerSecond() {
+		return nsPerOp == 0 ? 0 : 1e9 / nsPerOp;
+	}
+
+	public long getOps() {
+		return ops;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%-22s %-28s %-10s %14.1f ns/op  +- %10.1f  %14.1f ops/s", suite, name,
+				param, nsPerOp, stdDev, getOpsPerSecond());
+	}
+}
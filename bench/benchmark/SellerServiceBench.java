@@ -0,0 +1,56 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import db.DB;
+import model.dao.DaoFactory;
+import model.dao.SellerDao;
+import model.services.SellerService;
+
+/*
+ * SellerService and SellerDaoJDBC against the database of db.properties
+ * (so run it against a local copy, not a shared server). Several result
+ * sizes are read through findPage, which goes through the same mapping
+ * path as findAll, plus findAll of the whole table. Skipped when there is
+ * no database to connect to.
+ */
+public class SellerServiceBench extends Suite {
+
+	private static final int[] SIZES = { 10, 100, 1000, 10000 };
+
+	private SellerService service;
+	private SellerDao dao;
+
+	@Override
+	public String getName() {
+		return "SellerService";
+	}
+
+	@Override
+	public void setUp() {
+		DB.closeConnection(DB.getConnection()); // fails fast without a database
+		service = new SellerService();
+		dao = DaoFactory.createSellerDao();
+	}
+
+	@Override
+	public void tearDown() {
+		DB.closePool();
+	}
+
+	@Override
+	public List<Case> cases() {
+		List<Case> cases = new ArrayList<>();
+		for (int size : SIZES)
+			cases.add(new Case("findPage", String.valueOf(size), () -> service.findPage(null, size)));
+		cases.add(new Case("findAll", "table", () -> service.findAll()));
+		// cold identity map: every Id is registered again
+		cases.add(new Case("findAllColdCache", "table", () -> {
+			DaoFactory.getSellerCache().clear();
+			return dao.findAll();
+		}));
+		cases.add(new Case("count", "", () -> dao.count()));
+		return cases;
+	}
+}
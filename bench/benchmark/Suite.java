@@ -0,0 +1,21 @@
+package benchmark;
+
+import java.util.List;
+
+/*
+ * A group of benchmark cases sharing the same set up, e.g. a database
+ * connection or some generated data. A suite that can't be set up (no
+ * database, no display) is reported as skipped instead of failing the run.
+ */
+public abstract class Suite {
+
+	public abstract String getName();
+
+	public void setUp() throws Exception {
+	}
+
+	public void tearDown() throws Exception {
+	}
+
+	public abstract List<Case> cases();
+}
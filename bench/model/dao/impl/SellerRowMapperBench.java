@@ -0,0 +1,94 @@
+package model.dao.impl;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import benchmark.Case;
+import benchmark.Suite;
+import model.entities.Seller;
+
+/*
+ * Cost of turning rows into Sellers, without the database: the rows come
+ * from an in memory ResultSet, so only SellerRowMapper is measured. Lives
+ * in model.dao.impl because the mapper is package-private. The same path
+ * against the real database is in SellerServiceBench.
+ */
+public class SellerRowMapperBench extends Suite {
+
+	private static final String[] COLUMNS = { "Id", "Name", "Email", "BirthDate", "BaseSalary", "DepartmentId",
+			"DepName" };
+
+	private static final int ROWS = 1000;
+	private static final int DEPARTMENTS = 10;
+
+	private Object[][] rows;
+	private CachingDepartmentDao departments;
+	private SellerCache cache;
+
+	@Override
+	public String getName() {
+		return "SellerRowMapper";
+	}
+
+	@Override
+	public void setUp() {
+		rows = new Object[ROWS][];
+		for (int i = 0; i < ROWS; i++) {
+			int dep = 1 + i * DEPARTMENTS / ROWS; // sorted by department, like most of our queries
+			rows[i] = new Object[] { i + 1, "Seller " + i, "seller" + i + "@gmail.com",
+					new java.sql.Date(315532800000L + i * 86400000L), 1000.0 + i, dep, "Department " + dep };
+		}
+		// canonicalize doesn't need the underlying DAO
+		departments = new CachingDepartmentDao(null, 1000, Long.MAX_VALUE);
+		cache = new SellerCache(ROWS * 2);
+	}
+
+	@Override
+	public List<Case> cases() {
+		return Arrays.asList(
+				new Case("mapNoCache", ROWS + " rows", () -> mapAll(null)),
+				new Case("mapIntoCache", ROWS + " rows", () -> mapAll(cache)));
+	}
+
+	private List<Seller> mapAll(SellerCache cache) throws SQLException {
+		ResultSet rs = resultSet(rows);
+		SellerRowMapper mapper = new SellerRowMapper(rs, departments, cache);
+		List<Seller> list = new ArrayList<>(ROWS);
+		while (rs.next())
+			list.add(mapper.map(rs));
+		return list;
+	}
+
+	// just enough of a forward only ResultSet for the mapper
+	static ResultSet resultSet(Object[][] rows) {
+		int[] cursor = { -1 };
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "next":
+						return ++cursor[0] < rows.length;
+					case "findColumn":
+						for (int i = 0; i < COLUMNS.length; i++) {
+							if (COLUMNS[i].equalsIgnoreCase((String) args[0]))
+								return i + 1;
+						}
+						throw new SQLException("Column not found: " + args[0]);
+					case "getInt":
+						return ((Number) rows[cursor[0]][(Integer) args[0] - 1]).intValue();
+					case "getDouble":
+						return ((Number) rows[cursor[0]][(Integer) args[0] - 1]).doubleValue();
+					case "getString":
+					case "getDate":
+						return rows[cursor[0]][(Integer) args[0] - 1];
+					case "close":
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
@@ -0,0 +1,53 @@
+-- Change log read by ChangeFeedService (model.services), so every client
+-- picks up the seller and department edits made by the others.
+--
+-- Run once against the coursejdbc2 schema, e.g.
+--   mysql -u developer -p coursejdbc2 < sql/changelog.sql
+--
+-- Each insert, update or delete adds one row with a new Seq. Clients keep
+-- the highest Seq they have applied and only read the rows after it.
+-- ClientId is the @changelog_client session variable the application sets
+-- on its connections (NULL for changes made by other tools), so a client
+-- can skip the changes it made itself.
+
+CREATE TABLE IF NOT EXISTS changelog (
+  Seq BIGINT NOT NULL AUTO_INCREMENT,
+  TableName VARCHAR(20) NOT NULL,
+  RowId INT NOT NULL,
+  Op CHAR(1) NOT NULL,
+  ClientId VARCHAR(36) NULL,
+  ChangedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (Seq),
+  KEY changelog_changed_at (ChangedAt)
+) ENGINE=InnoDB;
+
+DROP TRIGGER IF EXISTS seller_changelog_insert;
+DROP TRIGGER IF EXISTS seller_changelog_update;
+DROP TRIGGER IF EXISTS seller_changelog_delete;
+DROP TRIGGER IF EXISTS department_changelog_insert;
+DROP TRIGGER IF EXISTS department_changelog_update;
+DROP TRIGGER IF EXISTS department_changelog_delete;
+
+-- single statement triggers, no DELIMITER needed
+CREATE TRIGGER seller_changelog_insert AFTER INSERT ON seller FOR EACH ROW
+  INSERT INTO changelog (TableName, RowId, Op, ClientId) VALUES ('seller', NEW.Id, 'I', @changelog_client);
+
+CREATE TRIGGER seller_changelog_update AFTER UPDATE ON seller FOR EACH ROW
+  INSERT INTO changelog (TableName, RowId, Op, ClientId) VALUES ('seller', NEW.Id, 'U', @changelog_client);
+
+CREATE TRIGGER seller_changelog_delete AFTER DELETE ON seller FOR EACH ROW
+  INSERT INTO changelog (TableName, RowId, Op, ClientId) VALUES ('seller', OLD.Id, 'D', @changelog_client);
+
+CREATE TRIGGER department_changelog_insert AFTER INSERT ON department FOR EACH ROW
+  INSERT INTO changelog (TableName, RowId, Op, ClientId) VALUES ('department', NEW.Id, 'I', @changelog_client);
+
+CREATE TRIGGER department_changelog_update AFTER UPDATE ON department FOR EACH ROW
+  INSERT INTO changelog (TableName, RowId, Op, ClientId) VALUES ('department', NEW.Id, 'U', @changelog_client);
+
+CREATE TRIGGER department_changelog_delete AFTER DELETE ON department FOR EACH ROW
+  INSERT INTO changelog (TableName, RowId, Op, ClientId) VALUES ('department', OLD.Id, 'D', @changelog_client);
+
+-- Clients only need the recent rows. Optional clean up, needs the event
+-- scheduler (SET GLOBAL event_scheduler = ON):
+-- CREATE EVENT IF NOT EXISTS changelog_purge ON SCHEDULE EVERY 1 HOUR
+--   DO DELETE FROM changelog WHERE ChangedAt < NOW() - INTERVAL 1 DAY;
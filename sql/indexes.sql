@@ -0,0 +1,16 @@
+-- Indexes behind the seller list's keyset paging (SellerDao.findPage).
+--
+-- Run once against the coursejdbc2 schema, e.g.
+--   mysql -u developer -p coursejdbc2 < sql/indexes.sql
+--
+-- A page is ORDER BY <sort column>, Id LIMIT n, starting after the last
+-- row of the previous page. With (<sort column>, Id) indexed MySQL reads
+-- the n rows in index order from that point; without it every page sorts
+-- the whole table. One index per sort column of SellerCriteria (Id is the
+-- primary key already). Sorting by department name can't use an index on
+-- seller, that one still sorts.
+
+CREATE INDEX seller_name_id ON seller (Name, Id);
+CREATE INDEX seller_email_id ON seller (Email, Id);
+CREATE INDEX seller_birth_date_id ON seller (BirthDate, Id);
+CREATE INDEX seller_base_salary_id ON seller (BaseSalary, Id);
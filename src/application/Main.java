@@ -2,11 +2,15 @@ package application;
 
 import java.io.IOException;
 
+import db.DB;
+import gui.util.FxWatchdog;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.ScrollPane;
 import javafx.stage.Stage;
+import model.services.ServiceExecutor;
+import model.services.WriteBehindQueue;
 
 public class Main extends Application {
 	
@@ -14,6 +18,7 @@ public class Main extends Application {
 	
 	@Override
 	public void start(Stage primaryStage) {
+		Startup.mark("fx-start");
 		try {
 			FXMLLoader loader = new FXMLLoader(getClass().getResource("/gui/MainView.fxml"));
 			ScrollPane scrollPane = loader.load();
@@ -23,13 +28,32 @@ public class Main extends Application {
 			mainScene = new Scene(scrollPane);
 			primaryStage.setScene(mainScene);
 			primaryStage.setTitle("Sample JavaFX application");
+			// the rest is warmed up in the background once the window is painted
+			mainScene.addPostLayoutPulseListener(new Runnable() {
+				@Override
+				public void run() {
+					mainScene.removePostLayoutPulseListener(this);
+					Startup.mark("first-frame");
+					Startup.warmUp();
+				}
+			});
 			primaryStage.show();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	@Override
+	public void stop() {
+		FxWatchdog.stop();
+		// saves still waiting for their batch
+		WriteBehindQueue.flushAll();
+		ServiceExecutor.shutdown();
+		DB.closePool();
+	}
+
 	public static void main(String[] args) {
+		Startup.mark("main");
 		launch(args);
 	}
 	
@@ -0,0 +1,158 @@
+package application;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import db.DB;
+import gui.util.FxWatchdog;
+import gui.util.ViewRegistry;
+import model.dao.DaoFactory;
+import model.services.ChangeFeedService;
+import model.services.SellerService;
+import model.services.ServiceExecutor;
+import model.services.SnapshotService;
+
+/*
+ * Startup in phases: Main only shows the main window, everything slow
+ * (JDBC driver, connection pool, view cache, first data) is warmed up
+ * afterwards in parallel on the service executor.
+ *
+ * Each phase is timed from the JVM start. When everything is ready the
+ * report is printed and appended to startup.reportFile (a CSV), so the
+ * numbers can be tracked between releases.
+ */
+public class Startup {
+
+	private static final long jvmStartMillis = jvmStart();
+	// phase -> ms since the JVM started, in the order they happened
+	private static final Map<String, Long> phases = new LinkedHashMap<>();
+	private static boolean warmingUp;
+
+	private static long jvmStart() {
+		return ProcessHandle.current().info().startInstant().map(i -> i.toEpochMilli())
+				.orElseGet(() -> ManagementFactory.getRuntimeMXBean().getStartTime());
+	}
+
+	public static synchronized void mark(String phase) {
+		phases.putIfAbsent(phase, System.currentTimeMillis() - jvmStartMillis);
+	}
+
+	public static synchronized Map<String, Long> getPhases() {
+		return new LinkedHashMap<>(phases);
+	}
+
+	// call once the first frame is on screen
+	public static synchronized void warmUp() {
+		if (warmingUp)
+			return;
+		warmingUp = true;
+
+		CompletableFuture<Void> driver = ServiceExecutor.run(() -> {
+			try {
+				DriverManager.getDriver(DB.getProperty("dburl", null));
+			} catch (SQLException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+			mark("driver-loaded");
+		});
+		// the pool opens its connections as soon as one is asked for
+		CompletableFuture<Void> pool = driver.thenRunAsync(() -> {
+			DB.closeConnection(DB.getConnection());
+			mark("pool-ready");
+		}, ServiceExecutor.get());
+		CompletableFuture<Void> views = ViewRegistry
+				.preload("/gui/SellerList.fxml", "/gui/DepartmentListView.fxml", "/gui/DashboardView.fxml",
+						"/gui/AboutView.fxml")
+				.thenRun(() -> mark("views-ready"));
+		// the local snapshot, if any, lets the lists show rows before the database answers
+		CompletableFuture<Void> snapshot = ServiceExecutor.run(() -> {
+			if (SnapshotService.load())
+				mark("snapshot-loaded");
+		});
+		CompletableFuture<Long> data = pool.thenCombineAsync(snapshot, (p, s) -> {
+			long seq;
+			if (SnapshotService.isEnabled()) {
+				seq = SnapshotService.reconcile();
+			}
+			else {
+				seq = ChangeFeedService.readLastSeq();
+				DaoFactory.createDepartmentDao().findAll();
+				new SellerService().count();
+			}
+			mark("data-ready");
+			return seq;
+		}, ServiceExecutor.get());
+		// changes from the other clients, from where the data loaded above is
+		data.thenAccept(ChangeFeedService::start);
+		// JMX and the pulse thread aren't needed for the first frame either
+		CompletableFuture<Void> watchdog = ServiceExecutor.run(() -> FxWatchdog.start(
+				DB.getIntProperty("fx.stallThresholdMs", 250), DB.getIntProperty("fx.watchdogIntervalMs", 100)));
+
+		CompletableFuture.allOf(driver, pool, snapshot, views, data, watchdog).whenComplete((v, e) -> {
+			if (e != null) {
+				// the views report database errors themselves when they load
+				System.err.println("Startup warm up failed: " + e.getMessage());
+				mark("warm-up-failed");
+			}
+			report();
+		});
+	}
+
+	private static void report() {
+		Map<String, Long> snapshot = getPhases();
+		StringBuilder sb = new StringBuilder("Startup times (ms since JVM start):");
+		for (Map.Entry<String, Long> phase : snapshot.entrySet())
+			sb.append(' ').append(phase.getKey()).append('=').append(phase.getValue());
+		Long frame = snapshot.get("first-frame");
+		Long ready = snapshot.get("data-ready");
+		if (frame != null && ready != null)
+			sb.append(" | first frame to data ready: ").append(ready - frame).append(" ms");
+		System.out.println(sb);
+
+		String file = DB.getProperty("startup.reportFile", null);
+		if (file != null)
+			append(Paths.get(file), snapshot);
+	}
+
+	private static final String[] COLUMNS = { "main", "fx-start", "first-frame", "driver-loaded", "pool-ready",
+			"views-ready", "data-ready" };
+
+	private static void append(Path file, Map<String, Long> snapshot) {
+		boolean header = !Files.exists(file);
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+			if (header) {
+				StringBuilder sb = new StringBuilder("time,java");
+				for (String column : COLUMNS)
+					sb.append(',').append(column.replace('-', '_')).append("_ms");
+				out.println(sb.append(",first_frame_to_data_ready_ms"));
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date())).append(',')
+					.append(System.getProperty("java.version"));
+			for (String column : COLUMNS) {
+				Long ms = snapshot.get(column);
+				sb.append(',').append(ms == null ? "" : ms.toString());
+			}
+			Long frame = snapshot.get("first-frame");
+			Long ready = snapshot.get("data-ready");
+			sb.append(',').append(frame != null && ready != null ? String.valueOf(ready - frame) : "");
+			out.println(sb);
+		} catch (IOException e) {
+			System.err.println("Could not write startup report to " + file + ": " + e.getMessage());
+		}
+	}
+}
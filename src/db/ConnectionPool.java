@@ -0,0 +1,453 @@
+package db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Small thread-safe connection pool. Every borrowed connection is a proxy:
+ * calling close() on it gives the physical connection back to the pool,
+ * so the DAOs can keep using the usual borrow/close pattern.
+ */
+public class ConnectionPool {
+
+	private final String url;
+	private final Properties driverProps;
+
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+	private final long leakThresholdMillis;
+	private final int validationTimeoutSeconds;
+	private final int statementCacheSize;
+	// run on every new physical connection, e.g. to set session variables
+	private final String initSql;
+
+	// idle connections, most recently used first
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+	// one permit per connection that may still be handed out
+	private final Semaphore permits;
+	// connection of the Transaction running on each thread, handed to every getConnection there
+	private final ThreadLocal<Connection> bound = new ThreadLocal<>();
+
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+
+	// borrow-wait metrics
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong leaks = new AtomicLong();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+
+	public ConnectionPool(Properties props) {
+		url = props.getProperty("dburl");
+		driverProps = new Properties();
+		for (String key : props.stringPropertyNames()) {
+			// pool.* keys are ours, the rest goes to the driver
+			if (!key.startsWith("pool."))
+				driverProps.setProperty(key, props.getProperty(key));
+		}
+		minSize = intProperty(props, "pool.minSize", 1);
+		maxSize = Math.max(minSize, intProperty(props, "pool.maxSize", 8));
+		idleTimeoutMillis = intProperty(props, "pool.idleTimeoutMs", 300000);
+		borrowTimeoutMillis = intProperty(props, "pool.borrowTimeoutMs", 10000);
+		leakThresholdMillis = intProperty(props, "pool.leakThresholdMs", 60000);
+		validationTimeoutSeconds = intProperty(props, "pool.validationTimeoutSec", 2);
+		statementCacheSize = intProperty(props, "pool.statementCacheSize", 32);
+		String init = props.getProperty("pool.initSql");
+		initSql = init == null || init.trim().isEmpty() ? null : init.trim();
+		permits = new Semaphore(maxSize, true);
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "db-pool-housekeeper");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+		// open the first connections in the background, nobody has to wait on them
+		housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+	}
+
+	private static int intProperty(Properties props, String key, int defaultValue) {
+		String value = props.getProperty(key);
+		if (value == null || value.trim().isEmpty())
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new DbException("Invalid value for " + key + ": " + value);
+		}
+	}
+
+	public Connection getConnection() {
+		Connection tx = bound.get();
+		if (tx != null)
+			return transactional(tx);
+		if (closed)
+			throw new DbException("Connection pool is closed");
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				throw new DbException("Timed out after " + borrowTimeoutMillis + "ms waiting for a connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a connection");
+		}
+		try {
+			PooledConnection pc = takeValidIdle();
+			if (pc == null)
+				pc = newConnection();
+			pc.borrowedAt = System.currentTimeMillis();
+			pc.borrowStack = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+			borrowed.add(pc);
+			recordWait(System.nanoTime() - start);
+			return pc.handle();
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	// borrows a connection for a Transaction; until unbind this thread gets it from getConnection
+	Connection bind() {
+		if (bound.get() != null)
+			throw new DbException("A transaction is already bound to this thread");
+		Connection conn = getConnection();
+		bound.set(conn);
+		return conn;
+	}
+
+	void unbind() {
+		bound.remove();
+	}
+
+	/*
+	 * The DAOs close their connection when done and JdbcBatch commits when
+	 * auto-commit is on; inside a transaction neither may happen, so the DAOs
+	 * get a view where close() does nothing and the transaction calls fail.
+	 */
+	private static Connection transactional(Connection conn) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						return null;
+					case "commit":
+					case "rollback":
+					case "setAutoCommit":
+					case "setReadOnly":
+					case "setTransactionIsolation":
+						throw new SQLException(method.getName() + " is up to the transaction this connection belongs to");
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						try {
+							return method.invoke(conn, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	private PooledConnection takeValidIdle() {
+		PooledConnection pc;
+		while ((pc = idle.pollFirst()) != null) {
+			if (isValid(pc))
+				return pc;
+			discard(pc);
+		}
+		return null;
+	}
+
+	private boolean isValid(PooledConnection pc) {
+		try {
+			return pc.physical.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private PooledConnection newConnection() {
+		try {
+			Connection c = DriverManager.getConnection(url, driverProps);
+			if (initSql != null) {
+				try (Statement st = c.createStatement()) {
+					st.execute(initSql);
+				} catch (SQLException e) {
+					c.close();
+					throw e;
+				}
+			}
+			PooledConnection pc = new PooledConnection(c);
+			created.incrementAndGet();
+			return pc;
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+	}
+
+	private void recordWait(long nanos) {
+		borrowCount.incrementAndGet();
+		totalWaitNanos.addAndGet(nanos);
+		maxWaitNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	void release(PooledConnection pc) {
+		if (!borrowed.remove(pc))
+			return; // already given back
+		pc.borrowStack = null;
+		try {
+			if (closed || pc.physical.isClosed()) {
+				discard(pc);
+			} else {
+				resetState(pc);
+				pc.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(pc);
+			}
+		} catch (SQLException e) {
+			discard(pc);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void resetState(PooledConnection pc) throws SQLException {
+		Connection c = pc.physical;
+		if (!c.getAutoCommit()) {
+			c.rollback();
+			c.setAutoCommit(true);
+		}
+		c.clearWarnings();
+	}
+
+	private void discard(PooledConnection pc) {
+		if (pc.statements != null)
+			pc.statements.close();
+		try {
+			pc.physical.close();
+		} catch (SQLException e) {
+			// nothing to do, it is going away anyway
+		}
+	}
+
+	// opens connections until minSize of them exist
+	public void prefill() {
+		while (!closed && idle.size() + borrowed.size() < minSize && permits.tryAcquire()) {
+			try {
+				PooledConnection pc = newConnection();
+				pc.lastUsed = System.currentTimeMillis();
+				idle.offerLast(pc);
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	private void housekeep() {
+		long now = System.currentTimeMillis();
+		// idle eviction, keeping at least minSize connections around
+		Iterator<PooledConnection> it = idle.descendingIterator();
+		while (it.hasNext() && idle.size() > minSize) {
+			PooledConnection pc = it.next();
+			if (now - pc.lastUsed > idleTimeoutMillis && idle.remove(pc)) {
+				evicted.incrementAndGet();
+				discard(pc);
+			}
+		}
+		// leak detection
+		if (leakThresholdMillis > 0) {
+			for (PooledConnection pc : borrowed) {
+				Throwable stack = pc.borrowStack;
+				if (stack != null && now - pc.borrowedAt > leakThresholdMillis) {
+					pc.borrowStack = null; // report each leak once
+					leaks.incrementAndGet();
+					System.err.println("Possible connection leak: borrowed " + (now - pc.borrowedAt) + "ms ago");
+					stack.printStackTrace();
+				}
+			}
+		}
+		try {
+			prefill();
+		} catch (DbException e) {
+			// database unreachable right now, try again on the next round
+		}
+	}
+
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+		PooledConnection pc;
+		while ((pc = idle.pollFirst()) != null)
+			discard(pc);
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public int getBorrowedCount() {
+		return borrowed.size();
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	public double getAverageWaitMillis() {
+		long count = borrowCount.get();
+		return count == 0 ? 0.0 : totalWaitNanos.get() / 1e6 / count;
+	}
+
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1e6;
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	public long getLeakCount() {
+		return leaks.get();
+	}
+
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	public long getEvictedCount() {
+		return evicted.get();
+	}
+
+	public long getStatementCacheHits() {
+		return statementHits.get();
+	}
+
+	public long getStatementCacheMisses() {
+		return statementMisses.get();
+	}
+
+	public double getStatementCacheHitRate() {
+		long hits = statementHits.get();
+		long total = hits + statementMisses.get();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool [idle=" + getIdleCount() + ", borrowed=" + getBorrowedCount() + ", max=" + maxSize
+				+ ", borrows=" + getBorrowCount() + ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis())
+				+ ", maxWaitMs=" + String.format("%.3f", getMaxWaitMillis()) + ", timeouts=" + getTimeoutCount()
+				+ ", leaks=" + getLeakCount() + ", stmtHits=" + getStatementCacheHits() + ", stmtMisses="
+				+ getStatementCacheMisses() + "]";
+	}
+
+	private class PooledConnection implements InvocationHandler {
+
+		private final Connection physical;
+		private final StatementCache statements;
+		private volatile long lastUsed = System.currentTimeMillis();
+		private volatile long borrowedAt;
+		private volatile Throwable borrowStack;
+
+		// the handle given out for the current borrow, closing it releases once
+		private Connection handle;
+		private boolean handleClosed;
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.statements = statementCacheSize > 0
+					? new StatementCache(physical, statementCacheSize, statementHits, statementMisses)
+					: null;
+		}
+
+		synchronized Connection handle() {
+			handleClosed = false;
+			handle = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+			return handle;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			switch (name) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + physical;
+			}
+			synchronized (this) {
+				if (proxy != handle || handleClosed) {
+					if (name.equals("close"))
+						return null;
+					if (name.equals("isClosed"))
+						return true;
+					throw new SQLException("Connection has already been returned to the pool");
+				}
+				if (name.equals("close")) {
+					handleClosed = true;
+				}
+			}
+			switch (name) {
+			case "close":
+				release(this);
+				return null;
+			case "isClosed":
+				return false;
+			case "prepareStatement":
+				if (statements != null && args.length == 1)
+					return statements.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+				if (statements != null && args.length == 2 && method.getParameterTypes()[1] == int.class)
+					return statements.prepare((String) args[0], (Integer) args[1]);
+				return invokePhysical(method, args);
+			default:
+				return invokePhysical(method, args);
+			}
+		}
+
+		private Object invokePhysical(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
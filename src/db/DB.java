@@ -3,31 +3,49 @@ package db;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Properties;
+import java.util.UUID;
 
 public class DB {
 
-	private static Connection conn = null;
+	private static ConnectionPool pool = null;
+	private static Properties props = null;
 	
+	// tells this running instance apart from the other clients of the database
+	private static final String CLIENT_ID = UUID.randomUUID().toString();
+	
+	public static synchronized ConnectionPool getPool() {
+		if (pool == null) {
+			Properties poolProps = new Properties();
+			poolProps.putAll(getProperties());
+			// the changelog triggers (sql/changelog.sql) record it with every change
+			if (getProperty("pool.initSql", null) == null)
+				poolProps.setProperty("pool.initSql", "SET @changelog_client = '" + CLIENT_ID + "'");
+			pool = new ConnectionPool(poolProps);
+		}
+		return pool;
+	}
+	
+	public static String getClientId() {
+		return CLIENT_ID;
+	}
+	
+	// borrows a connection from the pool, closing it gives it back
 	public static Connection getConnection() {
-		if (conn == null) {
-			try {
-				Properties props = loadProperties();
-				String url = props.getProperty("dburl");
-				conn = DriverManager.getConnection(url, props);
-			}
-			catch (SQLException e) {
-				throw new DbException(e.getMessage());
-			}
+		return getPool().getConnection();
+	}
+	
+	public static synchronized void closePool() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
 		}
-		return conn;
 	}
 	
-	public static void closeConnection() {
+	public static void closeConnection(Connection conn) {
 		if (conn != null) {
 			try {
 				conn.close();
@@ -37,6 +55,28 @@ public class DB {
 		}
 	}
 	
+	private static synchronized Properties getProperties() {
+		if (props == null)
+			props = loadProperties();
+		return props;
+	}
+	
+	public static String getProperty(String key, String defaultValue) {
+		String value = getProperties().getProperty(key);
+		return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+	}
+	
+	public static int getIntProperty(String key, int defaultValue) {
+		String value = getProperties().getProperty(key);
+		if (value == null || value.trim().isEmpty())
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new DbException("Invalid value for " + key + ": " + value);
+		}
+	}
+	
 	private static Properties loadProperties() {
 		try (FileInputStream fs = new FileInputStream("db.properties")) {
 			Properties props = new Properties();
@@ -0,0 +1,156 @@
+package db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * LRU cache of prepared statements for one physical connection, keyed by the
+ * SQL text and the generated-keys mode. The statements handed out are proxies:
+ * close() only clears them and puts them back into the cache. The real
+ * statements are closed when they fall out of the cache or when the
+ * connection itself goes away.
+ */
+class StatementCache {
+
+	private final Connection physical;
+	private final int maxSize;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	private final LinkedHashMap<String, CachedStatement> cache;
+
+	StatementCache(Connection physical, int maxSize, AtomicLong hits, AtomicLong misses) {
+		this.physical = physical;
+		this.maxSize = maxSize;
+		this.hits = hits;
+		this.misses = misses;
+		this.cache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+				if (size() > StatementCache.this.maxSize) {
+					eldest.getValue().evicted = true;
+					if (!eldest.getValue().inUse)
+						closeQuietly(eldest.getValue().statement);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+		String key = autoGeneratedKeys + "|" + sql;
+		CachedStatement cached = cache.get(key);
+		if (cached != null && !cached.inUse) {
+			hits.incrementAndGet();
+			cached.inUse = true;
+			return cached.proxy;
+		}
+		misses.incrementAndGet();
+		PreparedStatement st = physical.prepareStatement(sql, autoGeneratedKeys);
+		if (cached != null) {
+			// same statement already handed out on this connection, don't share it
+			return st;
+		}
+		cached = new CachedStatement(st);
+		cached.inUse = true;
+		cache.put(key, cached);
+		return cached.proxy;
+	}
+
+	private synchronized void giveBack(CachedStatement cached) throws SQLException {
+		cached.inUse = false;
+		if (cached.evicted) {
+			closeQuietly(cached.statement);
+			return;
+		}
+		PreparedStatement st = cached.statement;
+		try {
+			// a result set the borrower left open would stay open until the next execute
+			ResultSet rs = st.getResultSet();
+			if (rs != null)
+				rs.close();
+			st.clearParameters();
+			st.clearBatch();
+			// settings the borrower changed must not carry over to the next one
+			st.setFetchSize(0);
+			st.setMaxRows(0);
+			st.setQueryTimeout(0);
+		} catch (SQLException e) {
+			// can't tell what state it is in, don't hand it out again
+			cache.values().remove(cached);
+			closeQuietly(st);
+			throw e;
+		}
+	}
+
+	synchronized void close() {
+		List<CachedStatement> all = new ArrayList<>(cache.values());
+		cache.clear();
+		for (CachedStatement cached : all) {
+			cached.evicted = true;
+			closeQuietly(cached.statement);
+		}
+	}
+
+	synchronized int size() {
+		return cache.size();
+	}
+
+	private static void closeQuietly(PreparedStatement st) {
+		try {
+			st.close();
+		} catch (SQLException e) {
+			// the connection may already be gone
+		}
+	}
+
+	private class CachedStatement implements InvocationHandler {
+
+		private final PreparedStatement statement;
+		private final PreparedStatement proxy;
+		private boolean inUse;
+		private boolean evicted;
+
+		CachedStatement(PreparedStatement statement) {
+			this.statement = statement;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (inUse)
+					giveBack(this);
+				return null;
+			case "isClosed":
+				return !inUse || statement.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				try {
+					return method.invoke(statement, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
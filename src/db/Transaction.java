@@ -0,0 +1,173 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * A database transaction bound to the current thread: from begin() until
+ * close() every connection the DAOs get from the pool on this thread is
+ * this one, with auto-commit off, so their statements (and JdbcBatch's
+ * batches) share a single commit.
+ *
+ * try (Transaction tx = Transaction.begin(pool, false, Transaction.DEFAULT_ISOLATION)) {
+ *     ...DAO calls...
+ *     tx.commit();
+ * }
+ *
+ * Closing without commit() rolls back. Beginning again on a thread that
+ * already has one joins it: the inner one commits nothing itself, and if
+ * it ends without commit() the outer one can only roll back.
+ */
+public class Transaction implements AutoCloseable {
+
+	// leave the connection's isolation level as it is
+	public static final int DEFAULT_ISOLATION = -1;
+
+	private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+	private final ConnectionPool pool;
+	private final Connection conn;
+	private final boolean readOnly;
+	// the one this joined, null for the outermost
+	private final Transaction outer;
+	private final int previousIsolation;
+
+	private boolean rollbackOnly;
+	private boolean committed;
+	private boolean closed;
+	private final List<Runnable> afterCommit = new ArrayList<>();
+	private final List<Runnable> afterRollback = new ArrayList<>();
+
+	private Transaction(ConnectionPool pool, Connection conn, boolean readOnly, Transaction outer,
+			int previousIsolation) {
+		this.pool = pool;
+		this.conn = conn;
+		this.readOnly = readOnly;
+		this.outer = outer;
+		this.previousIsolation = previousIsolation;
+	}
+
+	public static Transaction begin(ConnectionPool pool, boolean readOnly, int isolation) {
+		Transaction outer = current.get();
+		if (outer != null) {
+			if (outer.readOnly && !readOnly)
+				throw new DbException("Read-write transaction inside a read-only one");
+			return new Transaction(pool, outer.conn, outer.readOnly, outer, DEFAULT_ISOLATION);
+		}
+		Connection conn = pool.bind();
+		int previous = DEFAULT_ISOLATION;
+		try {
+			// hints first, they apply to the transaction the first statement starts
+			if (isolation != DEFAULT_ISOLATION) {
+				previous = conn.getTransactionIsolation();
+				if (previous != isolation)
+					conn.setTransactionIsolation(isolation);
+				else
+					previous = DEFAULT_ISOLATION;
+			}
+			if (readOnly)
+				conn.setReadOnly(true);
+			conn.setAutoCommit(false);
+		} catch (SQLException e) {
+			pool.unbind();
+			DB.closeConnection(conn);
+			throw new DbException(e.getMessage());
+		}
+		Transaction tx = new Transaction(pool, conn, readOnly, null, previous);
+		current.set(tx);
+		return tx;
+	}
+
+	// the transaction running on this thread, or null
+	public static Transaction current() {
+		return current.get();
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	// run once the outermost transaction has committed, e.g. to publish changes
+	public void afterCommit(Runnable action) {
+		outermost().afterCommit.add(action);
+	}
+
+	// run once it has rolled back, e.g. to drop what was cached from it
+	public void afterRollback(Runnable action) {
+		outermost().afterRollback.add(action);
+	}
+
+	private Transaction outermost() {
+		Transaction tx = this;
+		while (tx.outer != null)
+			tx = tx.outer;
+		return tx;
+	}
+
+	public void setRollbackOnly() {
+		outermost().rollbackOnly = true;
+	}
+
+	public void commit() {
+		if (closed || committed)
+			throw new DbException("Transaction already ended");
+		committed = true;
+		if (outer != null)
+			return; // the outer one commits
+		if (rollbackOnly) {
+			rollback();
+			throw new DbException("Transaction rolled back, an inner unit of work failed");
+		}
+		try {
+			conn.commit();
+		} catch (SQLException e) {
+			rollback();
+			throw new DbException(e.getMessage());
+		}
+		run(afterCommit);
+	}
+
+	private void rollback() {
+		try {
+			conn.rollback();
+		} catch (SQLException e) {
+			// the connection is most likely gone, nothing was committed either way
+		}
+		run(afterRollback);
+	}
+
+	private static void run(List<Runnable> actions) {
+		for (Runnable action : actions)
+			action.run();
+		actions.clear();
+	}
+
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		if (outer != null) {
+			if (!committed)
+				outer.setRollbackOnly();
+			return;
+		}
+		current.remove();
+		pool.unbind();
+		try {
+			if (!committed)
+				rollback();
+			conn.setAutoCommit(true);
+			if (readOnly)
+				conn.setReadOnly(false);
+			if (previousIsolation != DEFAULT_ISOLATION)
+				conn.setTransactionIsolation(previousIsolation);
+		} catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		} finally {
+			DB.closeConnection(conn);
+		}
+	}
+}
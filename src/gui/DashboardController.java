@@ -0,0 +1,126 @@
+package gui;
+
+import java.net.URL;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+
+import gui.util.Alerts;
+import gui.util.FxWatchdog;
+import gui.util.Utils;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import model.entities.DepartmentStats;
+import model.services.ReportService;
+
+public class DashboardController implements Initializable {
+
+	private ReportService service;
+
+	@FXML
+	private Button refreshBt;
+
+	@FXML
+	private Label labelTotals;
+
+	@FXML
+	private TableView<DepartmentStats> tableViewStats;
+
+	@FXML
+	private TableColumn<DepartmentStats, String> tableColumnDepartment;
+
+	@FXML
+	private TableColumn<DepartmentStats, Integer> tableColumnHeadcount;
+
+	@FXML
+	private TableColumn<DepartmentStats, Double> tableColumnTotal;
+
+	@FXML
+	private TableColumn<DepartmentStats, Double> tableColumnAvg;
+
+	@FXML
+	private TableColumn<DepartmentStats, Double> tableColumnMin;
+
+	@FXML
+	private TableColumn<DepartmentStats, Double> tableColumnMax;
+
+	// one nested column per age group
+	@FXML
+	private TableColumn<DepartmentStats, ?> tableColumnAge;
+
+	@FXML
+	public void onRefreshBtAction() {
+		FxWatchdog.mark("DashboardController.onRefreshBtAction");
+		load(service.refreshAsync());
+	}
+
+	public void setReportService(ReportService service) {
+		this.service = service;
+	}
+
+	@Override
+	public void initialize(URL url, ResourceBundle rb) {
+		initializeNodes();
+	}
+
+	private void initializeNodes() {
+		tableColumnDepartment.setCellValueFactory(
+				param -> new ReadOnlyObjectWrapper<>(param.getValue().getDepartment().getName()));
+		tableColumnHeadcount.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getHeadcount()));
+		tableColumnTotal.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getTotalSalary()));
+		tableColumnAvg.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getAvgSalary()));
+		tableColumnMin.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getMinSalary()));
+		tableColumnMax.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getMaxSalary()));
+		Utils.formatTableColumnDouble(tableColumnTotal, 2);
+		Utils.formatTableColumnDouble(tableColumnAvg, 2);
+		Utils.formatTableColumnDouble(tableColumnMin, 2);
+		Utils.formatTableColumnDouble(tableColumnMax, 2);
+
+		for (int i = 0; i <= DepartmentStats.AGE_LIMITS.length; i++) {
+			int group = i;
+			TableColumn<DepartmentStats, Integer> column = new TableColumn<>(DepartmentStats.ageGroupLabel(i));
+			column.setPrefWidth(50.0);
+			column.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().getAgeGroup(group)));
+			tableColumnAge.getColumns().add(column);
+		}
+		Utils.bindHeightToWindow(tableViewStats);
+	}
+
+	// shows the cached figures right away, or computes them in the background
+	public void updateView() {
+		if (service == null)
+			throw new IllegalStateException("Service not instantiated.");
+		load(service.findDepartmentStatsAsync());
+	}
+
+	private void load(CompletableFuture<List<DepartmentStats>> future) {
+		tableViewStats.setPlaceholder(new Label("Loading..."));
+		refreshBt.setDisable(true);
+		future.whenCompleteAsync((list, e) -> {
+			refreshBt.setDisable(false);
+			tableViewStats.setPlaceholder(new Label("No departments"));
+			if (e != null) {
+				Alerts.showAlert("DB Exception", "Error loading dashboard", Utils.rootCause(e).getMessage(),
+						AlertType.ERROR);
+				return;
+			}
+			tableViewStats.setItems(FXCollections.observableArrayList(list));
+			int sellers = 0;
+			double payroll = 0.0;
+			for (DepartmentStats obj : list) {
+				sellers += obj.getHeadcount();
+				if (obj.getTotalSalary() != null)
+					payroll += obj.getTotalSalary();
+			}
+			labelTotals.setText(String.format("%d sellers in %d departments, total salary %.2f", sellers,
+					list.size(), payroll));
+		}, Utils.fxExecutor());
+	}
+}
@@ -6,11 +6,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
-import db.DbException;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
 import gui.util.Constraints;
+import gui.util.FxWatchdog;
 import gui.util.Utils;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -19,6 +21,7 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.stage.Stage;
 import model.entities.Department;
 import model.exceptions.ValidationException;
 import model.services.DepartmentService;
@@ -29,7 +32,7 @@ public class DepartmentFormController implements Initializable{
 	
 	private DepartmentService service;
 	
-	private List<DataChangeListener> dataChangeListeners = new ArrayList<>();
+	private List<DataChangeListener<Department>> dataChangeListeners = new ArrayList<>();
 	
 	@FXML
 	private TextField idTextField;
@@ -54,36 +57,55 @@ public class DepartmentFormController implements Initializable{
 		this.service=service;
 	}
 	
-	public void subscribeDataChangeListener(DataChangeListener listener) {
+	public void subscribeDataChangeListener(DataChangeListener<Department> listener) {
 		dataChangeListeners.add(listener);
 		//adds a listeners to the list of interested observers to 'watch out' for events
 	}
 	
-	private void notifyDataChange() {
-		for(DataChangeListener listener: dataChangeListeners) {
-			listener.onDataChanged();
+	private void notifyDataChange(DataChangeEvent.Type type) {
+		for(DataChangeListener<Department> listener: dataChangeListeners) {
+			listener.onDataChanged(new DataChangeEvent<>(entity, type));
 		}
 	}
 	
 	@FXML
 	public void onSaveBtAction(ActionEvent event) {
+		FxWatchdog.mark("DepartmentFormController.onSaveBtAction");
 		if(entity==null)//if not instantiated
 			throw new IllegalStateException("Entity was not instantiated!");
 		if(service==null)//since not using framework for dependency injection
 			throw new IllegalStateException("Service was null");
 		try {
 			entity=getFormData();//problem is in getFormData
-			service.saveOrUpdate(entity);
-			notifyDataChange();
-			Utils.currentStage(event).close();
 		}
 		catch(ValidationException e) {
 			setErrorMessages(e.getErrors());
 			//setErrorMessages(e.getMessage()); could be simpler, like this
+			return;
 		}
-		catch(DbException e) {
-			Alerts.showAlert("DB Exception", null, e.getMessage(), AlertType.ERROR);
+		DataChangeEvent.Type type = entity.getId() == null ? DataChangeEvent.Type.INSERTED : DataChangeEvent.Type.UPDATED;
+		Stage stage = Utils.currentStage(event);
+		if (service.isWriteBehind()) {
+			// closes right away, the department is written with the next batch
+			// and failures are reported through WriteBehindQueue's error listeners
+			CompletableFuture<Department> stored = service.saveOrUpdateLater(entity);
+			if (type == DataChangeEvent.Type.INSERTED)
+				stored.thenRunAsync(() -> notifyDataChange(type), Utils.fxExecutor()); // once it has its Id
+			else
+				notifyDataChange(type);
+			stage.close();
+			return;
 		}
+		saveButton.setDisable(true);
+		service.saveOrUpdateAsync(entity).whenCompleteAsync((v, e) -> {
+			saveButton.setDisable(false);
+			if(e!=null) {
+				Alerts.showAlert("DB Exception", null, Utils.rootCause(e).getMessage(), AlertType.ERROR);
+				return;
+			}
+			notifyDataChange(type);
+			stage.close();
+		}, Utils.fxExecutor());
 	}
 	
 	
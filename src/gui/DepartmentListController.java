@@ -6,12 +6,11 @@ import java.util.Optional;
 import java.util.ResourceBundle;
 
 
-import application.Main;
-import db.DbIntegrityException;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
+import gui.util.FxWatchdog;
 import gui.util.Utils;
-import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -22,7 +21,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
-import javafx.scene.control.TableCell;
+import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -30,9 +29,10 @@ import javafx.scene.layout.Pane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import model.entities.Department;
+import model.services.ChangeFeedService;
 import model.services.DepartmentService;
 
-public class DepartmentListController implements Initializable, DataChangeListener {
+public class DepartmentListController implements Initializable, DataChangeListener<Department> {
 
 	private DepartmentService service;
 
@@ -59,6 +59,7 @@ public class DepartmentListController implements Initializable, DataChangeListen
 
 	@FXML
 	public void onNewBtAction(ActionEvent event) {
+		FxWatchdog.mark("DepartmentListController.onNewBtAction");
 		Stage stage = Utils.currentStage(event);
 		Department dep = new Department();
 		createDialogForm(dep, "/gui/DepartmentForm.fxml", stage);
@@ -67,6 +68,8 @@ public class DepartmentListController implements Initializable, DataChangeListen
 	// dependency injection
 	public void setDepartmentService(DepartmentService service) {
 		this.service = service;
+		// edits made by the other clients
+		ChangeFeedService.addDepartmentListener(this, Utils.fxExecutor());
 	}
 
 	@Override
@@ -84,9 +87,11 @@ public class DepartmentListController implements Initializable, DataChangeListen
 		// JavaFX standard to initialize TableView
 		tableColumnId.setCellValueFactory(new PropertyValueFactory<>("id"));
 		tableColumnName.setCellValueFactory(new PropertyValueFactory<>("name"));
-		// Bind TableView Height with stage height
-		Stage stage = (Stage) Main.getMainScene().getWindow();
-		tableViewDepartment.prefHeightProperty().bind(stage.heightProperty());
+		// Bind TableView Height with stage height, once the view is shown (it may be preloaded)
+		Utils.bindHeightToWindow(tableViewDepartment);
+		// set once, the cells pick up whatever row they show
+		initEditButtons();
+		initRemoveButtons();
 
 	}
 
@@ -98,12 +103,17 @@ public class DepartmentListController implements Initializable, DataChangeListen
 		// List<Department>list = service.findAll(); -- you can call it from the
 		// method's argument
 		// how to instantiate a obsList AND findAll returns a list
-		obsList = FXCollections.observableArrayList(service.findAll());
-		tableViewDepartment.setItems(obsList);
-
-		// would also work in initializeNodes
-		initEditButtons();
-		initRemoveButtons();
+		tableViewDepartment.setPlaceholder(new Label("Loading..."));
+		service.findAllAsync().whenCompleteAsync((list, e) -> {
+			tableViewDepartment.setPlaceholder(new Label("No departments"));
+			if (e != null) {
+				Alerts.showAlert("DB Exception", "Error loading departments", Utils.rootCause(e).getMessage(),
+						AlertType.ERROR);
+				return;
+			}
+			obsList = FXCollections.observableArrayList(list);
+			tableViewDepartment.setItems(obsList);
+		}, Utils.fxExecutor());
 
 	}
 
@@ -135,61 +145,65 @@ public class DepartmentListController implements Initializable, DataChangeListen
 
 	}
 
+	// patches the affected row instead of reloading, keeps scroll position and selection
 	@Override
-	public void onDataChanged() {
-		updateTableView();
+	public void onDataChanged(DataChangeEvent<Department> event) {
+		if (obsList == null || event.getType() == DataChangeEvent.Type.INVALIDATED) {
+			updateTableView();
+			return;
+		}
+		Department obj = event.getEntity();
+		int index = obsList.indexOf(obj);
+		switch (event.getType()) {
+		case INSERTED:
+			if (index >= 0) {
+				obsList.set(index, obj);
+				break;
+			}
+			// keep the ORDER BY Name of findAll
+			int pos = 0;
+			while (pos < obsList.size() && obsList.get(pos).getName().compareToIgnoreCase(obj.getName()) <= 0)
+				pos++;
+			obsList.add(pos, obj);
+			break;
+		case UPDATED:
+			if (index >= 0)
+				obsList.set(index, obj);
+			break;
+		case REMOVED:
+			if (index >= 0)
+				obsList.remove(index);
+			break;
+		default:
+			break;
+		}
 	}
 
 	// framework specific method for creating an element inside a cell
 	private void initEditButtons() {
-		tableColumnEdit.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnEdit.setCellFactory(param -> new TableCell<Department, Department>() {
-			private final Button button = new Button("edit");
-
-			@Override
-			protected void updateItem(Department obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(
-						event -> createDialogForm(obj, "/gui/DepartmentForm.fxml", Utils.currentStage(event)));
-			}
-		});
+		// handlers are set once per cell and act on the row the cell shows
+		Utils.buttonTableColumn(tableColumnEdit, "edit",
+				(obj, event) -> createDialogForm(obj, "/gui/DepartmentForm.fxml", Utils.currentStage(event)));
 	}
 
 	private void initRemoveButtons() {
-		tableColumnRemove.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnRemove.setCellFactory(param -> new TableCell<Department, Department>() {
-			private final Button button = new Button("remove");
-
-			@Override
-			protected void updateItem(Department obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(event -> removeEntity(obj));
-			}
-		});
+		Utils.buttonTableColumn(tableColumnRemove, "remove", (obj, event) -> removeEntity(obj));
 	}
 
 	private void removeEntity(Department obj) {
+		FxWatchdog.mark("DepartmentListController.removeEntity");
 		Optional<ButtonType> confirmation = Alerts.showConfirmation("Department deletion",
 				"Are you sure you want to delete this department?");
 		if (confirmation.get() == ButtonType.OK) {
 			if (service == null)
 				throw new IllegalStateException("Service not instantiated.");
-			try {
-				service.remove(obj);
-				updateTableView();
-			} catch (DbIntegrityException e) {
-				Alerts.showAlert("Error removing department", null, e.getMessage(), AlertType.ERROR);
-			}
+			service.removeAsync(obj).whenCompleteAsync((v, e) -> {
+				if (e == null)
+					onDataChanged(new DataChangeEvent<>(obj, DataChangeEvent.Type.REMOVED));
+				else
+					Alerts.showAlert("Error removing department", null, Utils.rootCause(e).getMessage(),
+							AlertType.ERROR);
+			}, Utils.fxExecutor());
 		}
 	}
 
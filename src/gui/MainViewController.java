@@ -1,39 +1,78 @@
 package gui;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
 import java.util.function.Consumer;
 
 import application.Main;
 import gui.util.Alerts;
+import gui.util.FxWatchdog;
+import gui.util.ProgressDialog;
+import gui.util.Utils;
+import gui.util.ViewRegistry;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import model.entities.Department;
 import model.services.DepartmentService;
+import model.services.ReportService;
+import model.services.SellerExport;
+import model.services.SellerImport;
 import model.services.SellerService;
+import model.services.WriteBehindQueue;
 
 public class MainViewController implements Initializable{
 
+	private static final String ALL_DEPARTMENTS = "(All departments)";
+
+	// one of each for the whole session, like the views themselves, created
+	// on first use so loading the main view doesn't touch the database code
+	private SellerService sellerService;
+	private DepartmentService departmentService;
+	private ReportService reportService;
+	
 	@FXML
 	private MenuItem menuItemSeller;
 	
 	@FXML
 	private MenuItem menuItemDepartment;
 	
+	@FXML
+	private MenuItem menuItemImportSellers;
+	
+	@FXML
+	private MenuItem menuItemExportSellers;
+	
+	@FXML
+	private MenuItem menuItemExportDepartments;
+	
+	@FXML
+	private MenuItem menuItemDashboard;
+	
 	@FXML
 	private MenuItem menuItemAbout;
 	
 	@FXML
 	public void onMenuItemSellerAction() {
+		FxWatchdog.mark("MainViewController.onMenuItemSellerAction");
 		loadView("/gui/SellerList.fxml", (SellerListController controller)->{
-			controller.setSellerService(new SellerService());
+			if (sellerService == null)
+				sellerService = new SellerService();
+			controller.setSellerService(sellerService);
 			controller.updateTableView();
 			
 		});
@@ -41,38 +80,221 @@ public class MainViewController implements Initializable{
 	
 	@FXML
 	public void onMenuItemDepartmentAction() {
+		FxWatchdog.mark("MainViewController.onMenuItemDepartmentAction");
 		loadView("/gui/DepartmentListView.fxml",(DepartmentListController controller)->{
-			controller.setDepartmentService(new DepartmentService());
+			if (departmentService == null)
+				departmentService = new DepartmentService();
+			controller.setDepartmentService(departmentService);
 			controller.updateTableView();
 		});
 	}
 	
+	@FXML
+	public void onMenuItemImportSellersAction() {
+		FxWatchdog.mark("MainViewController.onMenuItemImportSellersAction");
+		FileChooser chooser = new FileChooser();
+		chooser.setTitle("Import sellers");
+		chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+		File file = chooser.showOpenDialog(Main.getMainScene().getWindow());
+		if (file == null)
+			return;
+		if (sellerService == null)
+			sellerService = new SellerService();
+		if (departmentService == null)
+			departmentService = new DepartmentService();
+		SellerImport importer = new SellerImport(sellerService, departmentService);
+		
+		ProgressDialog.CancellableTask<SellerImport.Result> task = new ProgressDialog.CancellableTask<>() {
+			@Override
+			protected SellerImport.Result call() throws Exception {
+				updateMessage("Reading " + file.getName());
+				return importer.importFile(file.toPath(), progress -> {
+					updateProgress(progress.getFraction(), 1.0);
+					updateMessage(String.format("%d rows read, %d imported, %d with errors", progress.getRowsRead(),
+							progress.getImported(), progress.getFailed()));
+				}, this::isCancelRequested);
+			}
+		};
+		// a cancelled import returns too, once the chunk being written is committed
+		task.setOnSucceeded(event -> {
+			SellerImport.Result result = task.getValue();
+			StringBuilder sb = new StringBuilder();
+			for (SellerImport.RowError error : result.getErrors()) {
+				if (sb.length() > 2000) {
+					sb.append("...");
+					break;
+				}
+				sb.append(error).append('\n');
+			}
+			// the rows imported before a cancel are kept
+			Alerts.showAlert("Import sellers", String.format("%s%d sellers imported, %d rows with errors",
+					result.isCancelled() ? "Import cancelled: " : "", result.getImported(), result.getFailed()),
+					sb.toString(), result.getFailed() > 0 ? AlertType.WARNING : AlertType.INFORMATION);
+			onMenuItemSellerAction();
+		});
+		task.setOnFailed(event -> {
+			Alerts.showAlert("Import sellers", "Import failed", task.getException().getMessage(), AlertType.ERROR);
+			onMenuItemSellerAction();
+		});
+		ProgressDialog.show(Main.getMainScene().getWindow(), "Importing sellers", task);
+	}
+	
+	@FXML
+	public void onMenuItemExportSellersAction() {
+		FxWatchdog.mark("MainViewController.onMenuItemExportSellersAction");
+		if (sellerService == null)
+			sellerService = new SellerService();
+		if (departmentService == null)
+			departmentService = new DepartmentService();
+		
+		// may be a query (cache expired, write-behind to flush), not on this thread
+		departmentService.findAllAsync().whenCompleteAsync((list, e) -> {
+			if (e != null) {
+				Alerts.showAlert("DB Exception", "Error loading departments", Utils.rootCause(e).getMessage(),
+						AlertType.ERROR);
+				return;
+			}
+			exportSellers(list);
+		}, Utils.fxExecutor());
+	}
+	
+	private void exportSellers(List<Department> departments) {
+		Map<String, Department> choices = new LinkedHashMap<>();
+		choices.put(ALL_DEPARTMENTS, null);
+		for (Department dep : departments)
+			choices.put(dep.getName(), dep);
+		ChoiceDialog<String> dialog = new ChoiceDialog<>(ALL_DEPARTMENTS, choices.keySet());
+		dialog.setTitle("Export sellers");
+		dialog.setHeaderText("Sellers to export");
+		dialog.setContentText("Department:");
+		Optional<String> choice = dialog.showAndWait();
+		if (!choice.isPresent())
+			return;
+		Department department = choices.get(choice.get());
+		
+		File file = chooseExportFile("Export sellers", "sellers");
+		if (file == null)
+			return;
+		SellerExport exporter = new SellerExport(sellerService, departmentService);
+		ProgressDialog.CancellableTask<Long> task = new ProgressDialog.CancellableTask<>() {
+			@Override
+			protected Long call() throws Exception {
+				updateMessage("Writing " + file.getName());
+				return exporter.exportSellers(file.toPath(), exportFormat(file), isGzip(file), department,
+						fraction -> updateProgress(fraction, 1.0), this::isCancelRequested);
+			}
+		};
+		runExport("Export sellers", file, task);
+	}
+	
+	@FXML
+	public void onMenuItemExportDepartmentsAction() {
+		FxWatchdog.mark("MainViewController.onMenuItemExportDepartmentsAction");
+		if (sellerService == null)
+			sellerService = new SellerService();
+		if (departmentService == null)
+			departmentService = new DepartmentService();
+		File file = chooseExportFile("Export departments", "departments");
+		if (file == null)
+			return;
+		SellerExport exporter = new SellerExport(sellerService, departmentService);
+		ProgressDialog.CancellableTask<Long> task = new ProgressDialog.CancellableTask<>() {
+			@Override
+			protected Long call() throws Exception {
+				updateMessage("Writing " + file.getName());
+				return exporter.exportDepartments(file.toPath(), exportFormat(file), isGzip(file));
+			}
+		};
+		runExport("Export departments", file, task);
+	}
+	
+	// the extension picks the format: .csv or .slc, either with .gz
+	private File chooseExportFile(String title, String name) {
+		FileChooser chooser = new FileChooser();
+		chooser.setTitle(title);
+		chooser.getExtensionFilters().addAll(
+				new FileChooser.ExtensionFilter("CSV files", "*.csv"),
+				new FileChooser.ExtensionFilter("Compressed CSV files", "*.csv.gz"),
+				new FileChooser.ExtensionFilter("Columnar files", "*.slc"),
+				new FileChooser.ExtensionFilter("Compressed columnar files", "*.slc.gz"));
+		chooser.setInitialFileName(name + ".csv");
+		File file = chooser.showSaveDialog(Main.getMainScene().getWindow());
+		if (file == null)
+			return null;
+		String lower = file.getName().toLowerCase();
+		if (!lower.endsWith(".csv") && !lower.endsWith(".csv.gz") && !lower.endsWith(".slc")
+				&& !lower.endsWith(".slc.gz")) {
+			// no known extension, take the one of the selected filter
+			String ext = chooser.getSelectedExtensionFilter() == null ? "*.csv"
+					: chooser.getSelectedExtensionFilter().getExtensions().get(0);
+			file = new File(file.getParentFile(), file.getName() + ext.substring(1));
+		}
+		return file;
+	}
+	
+	private static SellerExport.Format exportFormat(File file) {
+		String lower = file.getName().toLowerCase();
+		return lower.endsWith(".slc") || lower.endsWith(".slc.gz") ? SellerExport.Format.COLUMNAR
+				: SellerExport.Format.CSV;
+	}
+	
+	private static boolean isGzip(File file) {
+		return file.getName().toLowerCase().endsWith(".gz");
+	}
+	
+	// a cancelled export fails with a CancellationException, once the temporary file is gone
+	private void runExport(String title, File file, ProgressDialog.CancellableTask<Long> task) {
+		task.setOnSucceeded(event -> Alerts.showAlert(title, String.format("%d rows written", task.getValue()),
+				file.getAbsolutePath(), AlertType.INFORMATION));
+		task.setOnFailed(event -> {
+			if (task.getException() instanceof CancellationException)
+				Alerts.showAlert(title, "Export cancelled", "No file was written.", AlertType.INFORMATION);
+			else
+				Alerts.showAlert(title, "Export failed", task.getException().getMessage(), AlertType.ERROR);
+		});
+		ProgressDialog.show(Main.getMainScene().getWindow(), title, task);
+	}
+	
+	@FXML
+	public void onMenuItemDashboardAction() {
+		FxWatchdog.mark("MainViewController.onMenuItemDashboardAction");
+		loadView("/gui/DashboardView.fxml", (DashboardController controller) -> {
+			if (reportService == null)
+				reportService = new ReportService();
+			controller.setReportService(reportService);
+			controller.updateView();
+		});
+	}
+	
 	@FXML
 	public void onMenuItemAboutAction() {
+		FxWatchdog.mark("MainViewController.onMenuItemAboutAction");
 		loadView("/gui/AboutView.fxml",x->{});
 	}
 	
 	
 	@Override
 	public void initialize(URL url, ResourceBundle rb) {
-		// TODO Auto-generated method stub
-		
+		// saves that write-behind gave up on, after the dialog was long closed
+		WriteBehindQueue.addErrorListener((queue, rows, error) -> Utils.fxExecutor().execute(() -> Alerts.showAlert(
+				"Changes not saved", rows.size() + " " + queue + " change(s) could not be saved",
+				Utils.rootCause(error).getMessage() + "\nThe lists show what is stored again.", AlertType.ERROR)));
 	}
 	//Consumer added to method's argument so can be used by SellerController as well
+	//views are parsed once, showing one again only runs the action (which refreshes its data)
 	private synchronized <T> void loadView(String absoluteName, Consumer<T> initializingAction) {
 		try {
-			FXMLLoader loader = new FXMLLoader(getClass().getResource(absoluteName));
-			VBox newVBox = loader.load();
+			ViewRegistry.View view = ViewRegistry.get(absoluteName);
 			Scene mainScene = Main.getMainScene();
 			VBox mainVBox = (VBox)((ScrollPane)mainScene.getRoot()).getContent();
 			Node mainMenu = mainVBox.getChildren().get(0);
 			mainVBox.getChildren().clear();
 			mainVBox.getChildren().add(mainMenu);
-			mainVBox.getChildren().addAll(newVBox.getChildren());
+			mainVBox.getChildren().addAll(view.getNodes());
 			
 			
 			//accept the action passed through the consumer
-			T controller = loader.getController();
+			T controller = view.getController();
 			initializingAction.accept(controller);
 			
 			
@@ -11,10 +11,11 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 
-import db.DbException;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
 import gui.util.Constraints;
+import gui.util.FxWatchdog;
 import gui.util.Utils;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -29,12 +30,14 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
+import javafx.stage.Stage;
 import javafx.util.Callback;
 import model.entities.Department;
 import model.entities.Seller;
 import model.exceptions.ValidationException;
 import model.services.DepartmentService;
 import model.services.SellerService;
+import model.services.SellerValidator;
 
 public class SellerFormController implements Initializable {
 
@@ -44,7 +47,7 @@ public class SellerFormController implements Initializable {
 
 	private DepartmentService depService;
 
-	private List<DataChangeListener> dataChangeListeners = new ArrayList<>();
+	private List<DataChangeListener<Seller>> dataChangeListeners = new ArrayList<>();
 
 	@FXML
 	private TextField idTextField;
@@ -93,69 +96,65 @@ public class SellerFormController implements Initializable {
 		this.depService = depService;
 	}
 
-	public void subscribeDataChangeListener(DataChangeListener listener) {
+	public void subscribeDataChangeListener(DataChangeListener<Seller> listener) {
 		dataChangeListeners.add(listener);
 	}
 
-	private void notifyDataChange() {
-		for (DataChangeListener listener : dataChangeListeners) {
-			listener.onDataChanged();
+	// stored is what the service returned, the instance the caches hold now
+	private void notifyDataChange(Seller stored, DataChangeEvent.Type type) {
+		for (DataChangeListener<Seller> listener : dataChangeListeners) {
+			listener.onDataChanged(new DataChangeEvent<>(stored, type));
 		}
 	}
 
 	@FXML
 	public void onSaveBtAction(ActionEvent event) {
+		FxWatchdog.mark("SellerFormController.onSaveBtAction");
 		if (entity == null)
 			throw new IllegalStateException("Entity was not instantiated!");
 		if (service == null)
 			throw new IllegalStateException("Service was null");
 		try {
 			entity = getFormData();
-			service.saveOrUpdate(entity);
-			notifyDataChange();
-			Utils.currentStage(event).close();
 		} catch (ValidationException e) {
 			setErrorMessages(e.getErrors());
-		} catch (DbException e) {
-			Alerts.showAlert("DB Exception", null, e.getMessage(), AlertType.ERROR);
+			return;
 		}
+		DataChangeEvent.Type type = entity.getId() == null ? DataChangeEvent.Type.INSERTED : DataChangeEvent.Type.UPDATED;
+		Stage stage = Utils.currentStage(event);
+		if (service.isWriteBehind()) {
+			// closes right away, the seller is written with the next batch and
+			// failures are reported through WriteBehindQueue's error listeners;
+			// the lists get it once it is stored (and has its Id)
+			service.saveOrUpdateLater(entity).thenAcceptAsync(stored -> {
+				if (stored != null)
+					notifyDataChange(stored, type);
+			}, Utils.fxExecutor());
+			stage.close();
+			return;
+		}
+		saveButton.setDisable(true);
+		service.saveOrUpdateAsync(entity).whenCompleteAsync((stored, e) -> {
+			saveButton.setDisable(false);
+			if (e != null) {
+				Alerts.showAlert("DB Exception", null, Utils.rootCause(e).getMessage(), AlertType.ERROR);
+				return;
+			}
+			notifyDataChange(stored, type);
+			stage.close();
+		}, Utils.fxExecutor());
 	}
 
+	// same rules as the CSV import, see SellerValidator
 	private Seller getFormData() {
-		Seller obj = new Seller();
-		ValidationException exception = new ValidationException("Validation Error");
-
-		obj.setId(Utils.tryParseToInt(idTextField.getText()));
-		
-		if (nameTextField.getText() == null || nameTextField.getText().trim().equals(""))
-			exception.addError("name", "Field can't be empty");
-
-		obj.setName(nameTextField.getText());
-
-		if (emailTextField.getText() == null || emailTextField.getText().trim().equals(""))
-			exception.addError("email", "Field can't be empty");
-
-		obj.setEmail(emailTextField.getText());
-		
-		if(dpBirthDate.getValue()==null)
-			exception.addError("birthdate", "Field can't be empty");
-		else {
+		Date birthDate = null;
+		if (dpBirthDate.getValue() != null) {
 			//convert day from computer time to instant
 			Instant instant = Instant.from(dpBirthDate.getValue().atStartOfDay(ZoneId.systemDefault()));
-			obj.setBirthDate(Date.from(instant));
+			birthDate = Date.from(instant);
 		}
-
-		if (baseSalaryTextField.getText() == null || baseSalaryTextField.getText().trim().equals(""))
-			exception.addError("baseSalary", "Field can't be empty");
-		
-		obj.setBaseSalary(Utils.tryParseToDouble(baseSalaryTextField.getText()));
-		
-		obj.setDepartment(departmentComboBox.getValue());
-
-		if (exception.getErrors().size() > 0)
-			throw exception;
-
-		return obj;
+		return SellerValidator.toSeller(Utils.tryParseToInt(idTextField.getText()), nameTextField.getText(),
+				emailTextField.getText(), birthDate, baseSalaryTextField.getText(), departmentComboBox.getValue());
 	}
 
 	@FXML
@@ -180,8 +179,22 @@ public class SellerFormController implements Initializable {
 	public void loadAssociatedObjects() {
 		if(depService==null)
 			throw new IllegalStateException("DepartmentService was not instantiated");
-		obsList = FXCollections.observableArrayList(depService.findAll());
-		departmentComboBox.setItems(obsList);
+		departmentComboBox.setDisable(true);
+		departmentComboBox.setPromptText("Loading...");
+		depService.findAllAsync().whenCompleteAsync((list, e) -> {
+			departmentComboBox.setDisable(false);
+			departmentComboBox.setPromptText(null);
+			if (e != null) {
+				Alerts.showAlert("DB Exception", "Error loading departments", Utils.rootCause(e).getMessage(),
+						AlertType.ERROR);
+				return;
+			}
+			obsList = FXCollections.observableArrayList(list);
+			departmentComboBox.setItems(obsList);
+			//new sellers get the first department, as in updateFormData
+			if (departmentComboBox.getValue() == null)
+				departmentComboBox.getSelectionModel().selectFirst();
+		}, Utils.fxExecutor());
 	}
 	
 	// since it will work for new/old departments - this method allows you to see
@@ -213,6 +226,10 @@ public class SellerFormController implements Initializable {
 		salaryErrorLabel.setText(set.contains("baseSalary")?errors.get("baseSalary"): "");
 		
 		birthdateErrorLabel.setText(set.contains("birthdate")?errors.get("birthdate"): "");
+		
+		//no label for the combo box, it only happens when the departments failed to load
+		if (set.contains("department"))
+			Alerts.showAlert("Validation Error", null, errors.get("department"), AlertType.ERROR);
 	}
 	
 	//pre-tested method to initialize ComboBoxes 
@@ -2,45 +2,89 @@ package gui;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
 
-import application.Main;
-import db.DbIntegrityException;
+import gui.listeners.DataChangeEvent;
 import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
+import gui.util.Constraints;
+import gui.util.FxWatchdog;
+import gui.util.PagedList;
 import gui.util.Utils;
-import javafx.beans.property.ReadOnlyObjectWrapper;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
+import javafx.geometry.Side;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
-import javafx.scene.control.TableCell;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.Pane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import model.dao.SellerCriteria;
 import model.entities.Department;
 import model.entities.Seller;
+import model.services.ChangeFeedService;
 import model.services.DepartmentService;
+import model.services.SellerSearchIndex;
 import model.services.SellerService;
 
-public class SellerListController implements Initializable, DataChangeListener{
+public class SellerListController implements Initializable, DataChangeListener<Seller>{
+
+	private static final int PAGE_SIZE = 200;
+	
+	private static final int SEARCH_HITS = 10;
+	
+	private static final String NEW_DEPARTMENT = "(New department...)";
 
 	private SellerService service;
 	
 	@FXML
 	private Button newButton;
 	
+	@FXML
+	private Button moveButton;
+	
+	@FXML
+	private TextField nameFilterTextField;
+	
+	@FXML
+	private TextField emailFilterTextField;
+	
+	@FXML
+	private TextField minSalaryTextField;
+	
+	@FXML
+	private TextField maxSalaryTextField;
+	
+	@FXML
+	private Button filterButton;
+	
+	@FXML
+	private Button clearFilterButton;
+	
+	@FXML
+	private TextField searchTextField;
+	
 	@FXML
 	private TableView<Seller> tableViewSeller;
 	
@@ -70,17 +114,110 @@ public class SellerListController implements Initializable, DataChangeListener{
 	@FXML
 	private TableColumn<Seller, Seller> tableColumnRemove;
 	
-	private ObservableList<Seller> obsList;
+	private PagedList<Seller> obsList;
+	
+	// filters and sort of the rows being shown, applied by the database
+	private SellerCriteria criteria = new SellerCriteria();
+	
+	private Map<TableColumn<Seller, ?>, SellerCriteria.SortColumn> sortColumns = new HashMap<>();
+	
+	private final ContextMenu searchMenu = new ContextMenu();
+	
+	// text of the last search sent, older answers are dropped
+	private String lastSearch;
 	
 	@FXML
 	public void onNewButtonAction(ActionEvent event) {
+		FxWatchdog.mark("SellerListController.onNewButtonAction");
 		Stage stage = Utils.currentStage(event);
 		Seller seller = new Seller();
 		createDialogForm(seller, "/gui/SellerForm.fxml", stage);
 	}
 	
+	// moves the selected sellers to another department (a new one if asked), all or none
+	@FXML
+	public void onMoveButtonAction() {
+		FxWatchdog.mark("SellerListController.onMoveButtonAction");
+		List<Seller> selected = new ArrayList<>();
+		for (Seller obj : tableViewSeller.getSelectionModel().getSelectedItems()) {
+			// rows still loading are null
+			if (obj != null)
+				selected.add(obj);
+		}
+		if (selected.isEmpty()) {
+			Alerts.showAlert("Move sellers", null, "Select the sellers to move first.", AlertType.INFORMATION);
+			return;
+		}
+		new DepartmentService().findAllAsync().whenCompleteAsync((list, e) -> {
+			if (e != null) {
+				Alerts.showAlert("DB Exception", "Error loading departments", Utils.rootCause(e).getMessage(),
+						AlertType.ERROR);
+				return;
+			}
+			Department department = chooseDepartment(list);
+			if (department == null)
+				return;
+			moveButton.setDisable(true);
+			service.moveToDepartmentAsync(selected, department).whenCompleteAsync((moved, ex) -> {
+				moveButton.setDisable(false);
+				if (ex != null) {
+					Alerts.showAlert("Error moving sellers", "No seller was moved", Utils.rootCause(ex).getMessage(),
+							AlertType.ERROR);
+					return;
+				}
+				for (Seller obj : moved)
+					onDataChanged(new DataChangeEvent<>(obj, DataChangeEvent.Type.UPDATED));
+			}, Utils.fxExecutor());
+		}, Utils.fxExecutor());
+	}
+	
+	// one of these departments, or a new one (no Id yet) named here; null if cancelled
+	private Department chooseDepartment(List<Department> departments) {
+		Map<String, Department> choices = new LinkedHashMap<>();
+		for (Department dep : departments)
+			choices.put(dep.getName(), dep);
+		choices.put(NEW_DEPARTMENT, null);
+		ChoiceDialog<String> dialog = new ChoiceDialog<>(
+				departments.isEmpty() ? NEW_DEPARTMENT : departments.get(0).getName(), choices.keySet());
+		dialog.setTitle("Move sellers");
+		dialog.setHeaderText("Department for the selected sellers");
+		dialog.setContentText("Department:");
+		Optional<String> choice = dialog.showAndWait();
+		if (!choice.isPresent())
+			return null;
+		if (!NEW_DEPARTMENT.equals(choice.get()))
+			return choices.get(choice.get());
+		TextInputDialog input = new TextInputDialog();
+		input.setTitle("Move sellers");
+		input.setHeaderText("New department");
+		input.setContentText("Name:");
+		Optional<String> name = input.showAndWait();
+		if (!name.isPresent() || name.get().trim().isEmpty())
+			return null;
+		return new Department(null, name.get().trim());
+	}
+	
+	@FXML
+	public void onFilterButtonAction() {
+		FxWatchdog.mark("SellerListController.onFilterButtonAction");
+		criteria = buildCriteria();
+		updateTableView();
+	}
+	
+	@FXML
+	public void onClearFilterButtonAction() {
+		nameFilterTextField.clear();
+		emailFilterTextField.clear();
+		minSalaryTextField.clear();
+		maxSalaryTextField.clear();
+		onFilterButtonAction();
+	}
+	
 	public void setSellerService(SellerService service) {
 		this.service=service;
+		service.requestIndex();
+		// edits made by the other clients
+		ChangeFeedService.addSellerListener(this, Utils.fxExecutor());
 	}
 	
 	@Override
@@ -98,19 +235,112 @@ public class SellerListController implements Initializable, DataChangeListener{
 		tableColumnSalary.setCellValueFactory(new PropertyValueFactory<>("baseSalary"));
 		Utils.formatTableColumnDouble(tableColumnSalary, 2);
 		tableColumnDepartment.setCellValueFactory(new PropertyValueFactory<>("department"));
-
+		Constraints.setTextFieldDouble(minSalaryTextField);
+		Constraints.setTextFieldDouble(maxSalaryTextField);
+		
+		// sorting is done by the database, the table only reports the clicked column
+		sortColumns.put(tableColumnId, SellerCriteria.SortColumn.ID);
+		sortColumns.put(tableColumnName, SellerCriteria.SortColumn.NAME);
+		sortColumns.put(tableColumnEmail, SellerCriteria.SortColumn.EMAIL);
+		sortColumns.put(tableColumnBirthdate, SellerCriteria.SortColumn.BIRTH_DATE);
+		sortColumns.put(tableColumnSalary, SellerCriteria.SortColumn.BASE_SALARY);
+		sortColumns.put(tableColumnDepartment, SellerCriteria.SortColumn.DEPARTMENT);
+		tableViewSeller.setSortPolicy(table -> {
+			SellerCriteria next = buildCriteria();
+			if (next.getSortColumn() != criteria.getSortColumn() || next.isAscending() != criteria.isAscending()) {
+				criteria = next;
+				updateTableView();
+			}
+			return true;
+		});
 		
-		Stage stage = (Stage) Main.getMainScene().getWindow();
-		tableViewSeller.prefHeightProperty().bind(stage.heightProperty());
+		tableViewSeller.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+		Utils.bindHeightToWindow(tableViewSeller);
+		searchTextField.textProperty().addListener((obs, oldValue, newValue) -> search(newValue));
+		searchTextField.focusedProperty().addListener((obs, oldValue, newValue) -> {
+			if (!newValue)
+				searchMenu.hide();
+		});
+		initEditButtons();
+		initRemoveButtons();
 	}
 	
 	public void updateTableView() {
 		if(service==null)
 			throw new IllegalStateException("Service not instantiated.");
-		obsList=FXCollections.observableArrayList(service.findAll());
-		tableViewSeller.setItems(obsList);
-		initEditButtons();
-		initRemoveButtons();
+		if(obsList!=null)
+			obsList.dispose();
+		tableViewSeller.setPlaceholder(new Label("Loading..."));
+		SellerCriteria query = criteria;
+		service.countAsync(query).whenCompleteAsync((count, e) -> {
+			tableViewSeller.setPlaceholder(new Label("No sellers"));
+			if (e != null) {
+				Alerts.showAlert("DB Exception", "Error loading sellers", Utils.rootCause(e).getMessage(), AlertType.ERROR);
+				return;
+			}
+			if (query != criteria)
+				return; // filter changed again in the meantime
+			obsList=new PagedList<>((after, size) -> service.findByCriteria(query, after, size), query::keyOf, PAGE_SIZE, count);
+			obsList.setOnError(ex -> Alerts.showAlert("DB Exception", "Error loading sellers", ex.getMessage(), AlertType.ERROR));
+			tableViewSeller.setItems(obsList);
+		}, Utils.fxExecutor());
+	}
+	
+	// type-ahead: top matches in a menu under the search field
+	private void search(String text) {
+		lastSearch = text;
+		if (service == null || text == null || text.trim().isEmpty()) {
+			searchMenu.hide();
+			return;
+		}
+		service.searchAsync(text, SEARCH_HITS).whenCompleteAsync((hits, e) -> {
+			if (!text.equals(lastSearch))
+				return; // user kept typing
+			if (e != null || hits.isEmpty()) {
+				searchMenu.hide();
+				return;
+			}
+			List<MenuItem> items = new ArrayList<>();
+			for (SellerSearchIndex.Hit hit : hits) {
+				MenuItem item = new MenuItem(hit.toString());
+				item.setOnAction(event -> openSeller(hit.getId()));
+				items.add(item);
+			}
+			searchMenu.getItems().setAll(items);
+			if (!searchMenu.isShowing())
+				searchMenu.show(searchTextField, Side.BOTTOM, 0, 0);
+		}, Utils.fxExecutor());
+	}
+	
+	private void openSeller(Integer id) {
+		FxWatchdog.mark("SellerListController.openSeller");
+		Stage stage = (Stage) searchTextField.getScene().getWindow();
+		service.findByIdAsync(id).whenCompleteAsync((obj, e) -> {
+			if (e != null) {
+				Alerts.showAlert("DB Exception", "Error loading seller", Utils.rootCause(e).getMessage(), AlertType.ERROR);
+				return;
+			}
+			if (obj == null) {
+				Alerts.showAlert("Seller not found", null, "The seller was removed in the meantime", AlertType.INFORMATION);
+				return;
+			}
+			createDialogForm(obj, "/gui/SellerForm.fxml", stage);
+		}, Utils.fxExecutor());
+	}
+	
+	// filter fields and the table's sort order as a query
+	private SellerCriteria buildCriteria() {
+		SellerCriteria c = new SellerCriteria();
+		c.setNamePrefix(nameFilterTextField.getText());
+		c.setEmailPrefix(emailFilterTextField.getText());
+		c.setMinSalary(Utils.tryParseToDouble(minSalaryTextField.getText()));
+		c.setMaxSalary(Utils.tryParseToDouble(maxSalaryTextField.getText()));
+		if (!tableViewSeller.getSortOrder().isEmpty()) {
+			TableColumn<Seller, ?> column = tableViewSeller.getSortOrder().get(0);
+			c.setSortColumn(sortColumns.get(column));
+			c.setAscending(column.getSortType() == TableColumn.SortType.ASCENDING);
+		}
+		return c;
 	}
 	
 	private void createDialogForm(Seller obj, String absoluteName, Stage parentStage) {
@@ -142,60 +372,62 @@ public class SellerListController implements Initializable, DataChangeListener{
 
 	}
 	
+	// patches the affected row instead of reloading, keeps scroll position and selection
 	@Override
-	public void onDataChanged() {
-		updateTableView();
+	public void onDataChanged(DataChangeEvent<Seller> event) {
+		if (obsList == null || event.getType() == DataChangeEvent.Type.INVALIDATED) {
+			updateTableView();
+			return;
+		}
+		Seller obj = event.getEntity();
+		boolean shown = obsList.indexOf(obj) >= 0;
+		switch (event.getType()) {
+		case INSERTED:
+			if (shown)
+				obsList.replaceRow(obj);
+			else if (criteria.matches(obj))
+				obsList.insertRow(obj, criteria.comparator());
+			break;
+		case UPDATED:
+			// moves if the sort column changed; a row not loaded yet will come from the database as it is now
+			if (criteria.matches(obj))
+				obsList.updateRow(obj, criteria.comparator());
+			else if (shown)
+				obsList.removeRow(obj);
+			break;
+		case REMOVED:
+			// rows removed by other clients may not be loaded, or even data we know of
+			if (shown || (obj.getName() != null && criteria.matches(obj)))
+				obsList.removeRow(obj);
+			break;
+		default:
+			break;
+		}
 	}
 	
 	private void initEditButtons() {
-		tableColumnEdit.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnEdit.setCellFactory(param -> new TableCell<Seller, Seller>() {
-			private final Button button = new Button("edit");
-
-			@Override
-			protected void updateItem(Seller obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(
-						event -> createDialogForm(obj, "/gui/SellerForm.fxml", Utils.currentStage(event)));
-			}
-		});
+		// handlers are set once per cell and act on the row the cell shows
+		Utils.buttonTableColumn(tableColumnEdit, "edit",
+				(obj, event) -> createDialogForm(obj, "/gui/SellerForm.fxml", Utils.currentStage(event)));
 	}
 
 	private void initRemoveButtons() {
-		tableColumnRemove.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnRemove.setCellFactory(param -> new TableCell<Seller, Seller>() {
-			private final Button button = new Button("remove");
-
-			@Override
-			protected void updateItem(Seller obj, boolean empty) {
-				super.updateItem(obj, empty);
-				if (obj == null) {
-					setGraphic(null);
-					return;
-				}
-				setGraphic(button);
-				button.setOnAction(event -> removeEntity(obj));
-			}
-		});
+		Utils.buttonTableColumn(tableColumnRemove, "remove", (obj, event) -> removeEntity(obj));
 	}
 
 	private void removeEntity(Seller obj) {
+		FxWatchdog.mark("SellerListController.removeEntity");
 		Optional<ButtonType> confirmation = Alerts.showConfirmation("Seller deletion",
 				"Are you sure you want to delete this seller?");
 		if (confirmation.get() == ButtonType.OK) {
 			if (service == null)
 				throw new IllegalStateException("Service not instantiated.");
-			try {
-				service.remove(obj);
-				updateTableView();
-			} catch (DbIntegrityException e) {
-				Alerts.showAlert("Error removing seller", null, e.getMessage(), AlertType.ERROR);
-			}
+			service.removeAsync(obj).whenCompleteAsync((v, e) -> {
+				if (e == null)
+					onDataChanged(new DataChangeEvent<>(obj, DataChangeEvent.Type.REMOVED));
+				else
+					Alerts.showAlert("Error removing seller", null, Utils.rootCause(e).getMessage(), AlertType.ERROR);
+			}, Utils.fxExecutor());
 		}
 	}
 
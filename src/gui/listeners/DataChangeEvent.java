@@ -0,0 +1,31 @@
+package gui.listeners;
+
+public class DataChangeEvent<T> {
+
+	public enum Type {
+		INSERTED, UPDATED, REMOVED,
+		// too many changes to list one by one, entity is null: reload everything
+		INVALIDATED
+	}
+
+	private final T entity;
+	private final Type type;
+
+	public DataChangeEvent(T entity, Type type) {
+		this.entity = entity;
+		this.type = type;
+	}
+
+	public T getEntity() {
+		return entity;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return "DataChangeEvent [type=" + type + ", entity=" + entity + "]";
+	}
+}
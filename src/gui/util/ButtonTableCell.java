@@ -0,0 +1,32 @@
+package gui.util;
+
+import java.util.function.BiConsumer;
+
+import javafx.event.ActionEvent;
+import javafx.scene.control.Button;
+import javafx.scene.control.TableCell;
+
+/*
+ * Table cell with a button acting on the row's object. The handler is set
+ * once, when the cell is made, and reads the row the cell shows at click
+ * time, instead of a new handler being made on every update.
+ */
+public class ButtonTableCell<S> extends TableCell<S, S> {
+
+	private final Button button;
+
+	public ButtonTableCell(String text, BiConsumer<S, ActionEvent> action) {
+		button = new Button(text);
+		button.setOnAction(event -> {
+			S obj = getItem();
+			if (obj != null)
+				action.accept(obj, event);
+		});
+	}
+
+	@Override
+	protected void updateItem(S obj, boolean empty) {
+		super.updateItem(obj, empty);
+		setGraphic(empty || obj == null ? null : button);
+	}
+}
@@ -0,0 +1,68 @@
+package gui.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/*
+ * Turns cell values into text for one table column. The format objects are
+ * made once and, like the cells, only used on the FX thread, so they need
+ * no locking. The text of the most recently shown values is kept, so
+ * scrolling back and forth over the same rows formats nothing again.
+ */
+public class CellFormatter<T> {
+
+	private static final int CACHE_SIZE = 1024;
+
+	private final Function<T, String> format;
+	// the value as a long, what a cell compares to see it already shows it
+	private final ToLongFunction<T> bits;
+	// what goes into the cache as key, a copy for dates since they are mutable
+	private final UnaryOperator<T> copy;
+	private final LinkedHashMap<T, String> cache = new LinkedHashMap<T, String>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<T, String> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	public CellFormatter(Function<T, String> format, ToLongFunction<T> bits, UnaryOperator<T> copy) {
+		this.format = format;
+		this.bits = bits;
+		this.copy = copy;
+	}
+
+	// the pattern is built once, and with the cache only new values get formatted
+	public static CellFormatter<Double> decimal(int decimalPlaces) {
+		String pattern = "%." + decimalPlaces + "f";
+		return new CellFormatter<>(value -> String.format(pattern, value), Double::doubleToLongBits,
+				UnaryOperator.identity());
+	}
+
+	public static CellFormatter<Date> date(String pattern) {
+		SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+		return new CellFormatter<>(sdf::format, Date::getTime, value -> new Date(value.getTime()));
+	}
+
+	// no boxing, this runs on every cell update
+	public long bitsOf(T value) {
+		return bits.applyAsLong(value);
+	}
+
+	public String format(T value) {
+		if (value == null)
+			return null;
+		String text = cache.get(value);
+		if (text == null) {
+			text = format.apply(value);
+			cache.put(copy.apply(value), text);
+		}
+		return text;
+	}
+}
@@ -0,0 +1,36 @@
+package gui.util;
+
+import javafx.scene.control.TableCell;
+
+/*
+ * Table cell showing its value through a CellFormatter shared by the
+ * column. When the cell is updated with the value it already shows (which
+ * happens a lot while scrolling and on layout) nothing is done at all.
+ */
+public class FormattedTableCell<S, T> extends TableCell<S, T> {
+
+	private final CellFormatter<T> formatter;
+	// what the cell shows, as CellFormatter.bitsOf, valid while showing is set
+	private boolean showing;
+	private long shownBits;
+
+	public FormattedTableCell(CellFormatter<T> formatter) {
+		this.formatter = formatter;
+	}
+
+	@Override
+	protected void updateItem(T item, boolean empty) {
+		super.updateItem(item, empty);
+		if (empty || item == null) {
+			showing = false;
+			setText(null);
+			return;
+		}
+		long bits = formatter.bitsOf(item);
+		if (showing && shownBits == bits)
+			return;
+		showing = true;
+		shownBits = bits;
+		setText(formatter.format(item));
+	}
+}
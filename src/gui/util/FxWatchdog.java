@@ -0,0 +1,183 @@
+package gui.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import javafx.application.Platform;
+import model.dao.metrics.DaoMetrics;
+import model.dao.metrics.OperationStats;
+
+/*
+ * Watches the JavaFX Application Thread for "frozen window" episodes. A
+ * daemon thread posts a heartbeat with Platform.runLater every interval and
+ * measures how long it takes to run (FxThread.pulse in DaoMetrics). When it
+ * takes longer than the threshold the FX thread is stalled: its stack is
+ * taken at that moment, and once it's free again the stall is logged and
+ * recorded per action (FxStall.<action> in DaoMetrics, next to the DAO
+ * stats), so the JMX console and the metrics dump show both.
+ *
+ * The action is the last one given to mark() by an event handler, or else
+ * the first frame of our gui classes on the stack. Stalls whose stack has
+ * JDBC or DAO frames are counted apart: those are database calls still made
+ * on the UI thread.
+ */
+public class FxWatchdog implements FxWatchdogMBean {
+
+	private static FxWatchdog instance;
+
+	private final long thresholdMillis;
+	private final long intervalMillis;
+	private final OperationStats pulse = DaoMetrics.get("FxThread", "pulse");
+
+	private volatile Thread fxThread;
+	private volatile boolean running = true;
+	// last action started on the FX thread, cleared by the next heartbeat
+	private static volatile String currentAction;
+
+	private final AtomicLong stalls = new AtomicLong();
+	private final AtomicLong jdbcStalls = new AtomicLong();
+	private final AtomicLong totalStallNanos = new AtomicLong();
+	private final AtomicLong maxStallNanos = new AtomicLong();
+	private volatile String lastStallAction;
+	private volatile String lastStallStack;
+
+	private FxWatchdog(long thresholdMillis, long intervalMillis) {
+		this.thresholdMillis = thresholdMillis;
+		this.intervalMillis = intervalMillis;
+	}
+
+	public static synchronized void start(long thresholdMillis, long intervalMillis) {
+		if (instance != null || thresholdMillis <= 0)
+			return;
+		instance = new FxWatchdog(thresholdMillis, Math.max(intervalMillis, 10));
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(instance, new ObjectName("gui:type=FxWatchdog"));
+		} catch (JMException e) {
+			System.err.println("Could not register FX watchdog MBean: " + e.getMessage());
+		}
+		Thread t = new Thread(instance::watch, "fx-watchdog");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	public static synchronized void stop() {
+		if (instance != null) {
+			instance.running = false;
+			instance = null;
+		}
+	}
+
+	// called first thing by event handlers, names the action a stall belongs to
+	public static void mark(String action) {
+		currentAction = action;
+	}
+
+	private void watch() {
+		while (running) {
+			long posted = System.nanoTime();
+			CountDownLatch done = new CountDownLatch(1);
+			Platform.runLater(() -> {
+				fxThread = Thread.currentThread();
+				currentAction = null;
+				done.countDown();
+			});
+			try {
+				if (!done.await(thresholdMillis, TimeUnit.MILLISECONDS)) {
+					// stalled: take the stack now, while it's still stuck
+					Thread thread = fxThread;
+					StackTraceElement[] stack = thread == null ? new StackTraceElement[0] : thread.getStackTrace();
+					String action = currentAction;
+					// then wait for it to get free, however long that takes
+					while (running && !done.await(1, TimeUnit.SECONDS))
+						continue;
+					stall(System.nanoTime() - posted, action != null ? action : actionOf(stack), stack);
+				}
+				pulse.record(System.nanoTime() - posted, false);
+				Thread.sleep(intervalMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void stall(long nanos, String action, StackTraceElement[] stack) {
+		boolean jdbc = hasJdbcFrames(stack);
+		stalls.incrementAndGet();
+		if (jdbc)
+			jdbcStalls.incrementAndGet();
+		totalStallNanos.addAndGet(nanos);
+		long max = maxStallNanos.get();
+		while (nanos > max && !maxStallNanos.compareAndSet(max, nanos))
+			max = maxStallNanos.get();
+		// errors of these stats are the stalls that had a JDBC call on the stack
+		DaoMetrics.get("FxStall", action).record(nanos, jdbc);
+
+		StringBuilder sb = new StringBuilder();
+		for (StackTraceElement frame : stack)
+			sb.append("\tat ").append(frame).append(System.lineSeparator());
+		lastStallAction = action;
+		lastStallStack = sb.toString();
+		System.err.println(String.format("FX thread stalled for %d ms in %s%s%n%s", nanos / 1_000_000, action,
+				jdbc ? " (JDBC on the UI thread)" : "", lastStallStack));
+	}
+
+	// first frame of our own gui code, e.g. "SellerFormController.onSaveBtAction"
+	private static String actionOf(StackTraceElement[] stack) {
+		for (StackTraceElement frame : stack) {
+			String cls = frame.getClassName();
+			if (cls.startsWith("gui.") && !cls.startsWith("gui.util.FxWatchdog")) {
+				String simple = cls.substring(cls.lastIndexOf('.') + 1);
+				int inner = simple.indexOf('$');
+				return (inner > 0 ? simple.substring(0, inner) : simple) + "." + frame.getMethodName();
+			}
+		}
+		return "unknown";
+	}
+
+	private static boolean hasJdbcFrames(StackTraceElement[] stack) {
+		for (StackTraceElement frame : stack) {
+			String cls = frame.getClassName();
+			if (cls.startsWith("java.sql.") || cls.startsWith("com.mysql.") || cls.startsWith("model.dao.")
+					|| cls.startsWith("db."))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public long getStalls() {
+		return stalls.get();
+	}
+
+	@Override
+	public long getJdbcStalls() {
+		return jdbcStalls.get();
+	}
+
+	@Override
+	public double getMaxStallMillis() {
+		return maxStallNanos.get() / 1_000_000.0;
+	}
+
+	@Override
+	public long getTotalStallMillis() {
+		return totalStallNanos.get() / 1_000_000;
+	}
+
+	@Override
+	public String getLastStallAction() {
+		return lastStallAction;
+	}
+
+	@Override
+	public String getLastStallStack() {
+		return lastStallStack;
+	}
+}
@@ -0,0 +1,17 @@
+package gui.util;
+
+// what JMX shows for the FX thread watchdog
+public interface FxWatchdogMBean {
+
+	long getStalls();
+
+	long getJdbcStalls();
+
+	double getMaxStallMillis();
+
+	long getTotalStallMillis();
+
+	String getLastStallAction();
+
+	String getLastStallStack();
+}
@@ -0,0 +1,231 @@
+package gui.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import model.services.ServiceExecutor;
+
+/*
+ * Read-only list for TableViews over big tables. size() is the (cached) row
+ * count, and rows that were not fetched yet show up as null until the page
+ * holding them arrives. Pages are fetched in the background with keyset
+ * pagination, so they can only be loaded in order: scrolling far down loads
+ * the pages in between as well.
+ */
+public class PagedList<T> extends ObservableListBase<T> {
+
+	@FunctionalInterface
+	public interface PageLoader<T> {
+		// returns the rows right after 'after' (the first rows when it's null)
+		List<T> load(T after, int pageSize);
+	}
+
+	private final PageLoader<T> loader;
+	// copy of a row's sort key, what the next page is asked to start after
+	private final UnaryOperator<T> keyOf;
+	private final int pageSize;
+
+	// everything below is only touched on the FX thread
+	private final List<T> loaded = new ArrayList<>();
+	private int size;
+	private int wanted = -1;
+	private boolean loading;
+	private boolean rejected;
+	private boolean exhausted;
+	private boolean disposed;
+
+	private Consumer<Throwable> onError = Throwable::printStackTrace;
+
+	public PagedList(PageLoader<T> loader, UnaryOperator<T> keyOf, int pageSize, int totalSize) {
+		this.loader = loader;
+		this.keyOf = keyOf;
+		this.pageSize = pageSize;
+		this.size = totalSize;
+		// always have the first page on its way
+		requestUpTo(0);
+	}
+
+	public void setOnError(Consumer<Throwable> onError) {
+		this.onError = onError;
+	}
+
+	// stops fetching, used when the list is replaced
+	public void dispose() {
+		disposed = true;
+	}
+
+	@Override
+	public T get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		if (index < loaded.size())
+			return loaded.get(index);
+		requestUpTo(index);
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int getLoadedCount() {
+		return loaded.size();
+	}
+
+	// only looks at the rows loaded so far, never triggers a fetch
+	@Override
+	public int indexOf(Object o) {
+		return loaded.indexOf(o);
+	}
+
+	/*
+	 * In-place patches for changes made elsewhere, so the list does not have
+	 * to be reloaded. They only touch the rows already loaded, rows further
+	 * down will come from the database with the change already in them.
+	 */
+
+	public void replaceRow(T obj) {
+		int index = loaded.indexOf(obj);
+		if (index < 0)
+			return;
+		T old = loaded.set(index, obj);
+		beginChange();
+		nextSet(index, old);
+		endChange();
+	}
+
+	// obj was changed and belongs in the list: replaced where it stays in
+	// order, moved otherwise, added when it was not among the loaded rows
+	public void updateRow(T obj, Comparator<? super T> order) {
+		int index = loaded.indexOf(obj);
+		if (index >= 0 && staysAt(index, obj, order)) {
+			replaceRow(obj);
+			return;
+		}
+		if (index >= 0)
+			removeRow(obj);
+		else if (!exhausted && insertionPoint(obj, order) == loaded.size())
+			return; // past the loaded rows, comes from the database as it is now
+		insertRow(obj, order);
+	}
+
+	private boolean staysAt(int index, T obj, Comparator<? super T> order) {
+		if (index > 0 && order.compare(loaded.get(index - 1), obj) >= 0)
+			return false;
+		if (index < loaded.size() - 1)
+			return order.compare(obj, loaded.get(index + 1)) < 0;
+		// the last row loaded, the rows after it are not known yet
+		return exhausted || order.compare(obj, loaded.get(index)) <= 0;
+	}
+
+	private int insertionPoint(T obj, Comparator<? super T> order) {
+		int index = Collections.binarySearch(loaded, obj, order);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	// comparator must match the order the pages come in
+	public void insertRow(T obj, Comparator<? super T> order) {
+		int index = insertionPoint(obj, order);
+		beginChange();
+		if (index < loaded.size() || exhausted) {
+			loaded.add(index, obj);
+			nextAdd(index, index + 1);
+		}
+		else {
+			// past the loaded rows, only the count changes
+			nextAdd(size, size + 1);
+		}
+		size++;
+		endChange();
+	}
+
+	public void removeRow(T obj) {
+		int index = loaded.indexOf(obj);
+		beginChange();
+		if (index >= 0) {
+			T old = loaded.remove(index);
+			nextRemove(index, old);
+		}
+		else if (size > loaded.size()) {
+			// one of the rows not loaded yet
+			nextRemove(size - 1, (T) null);
+		}
+		else {
+			endChange();
+			return;
+		}
+		size--;
+		endChange();
+	}
+
+	private void requestUpTo(int index) {
+		// prefetch one page ahead of what is being looked at
+		wanted = Math.max(wanted, index + pageSize);
+		if (loading || exhausted || disposed || loaded.size() > wanted)
+			return;
+		loading = true;
+		// a copy, the row itself may be replaced or moved while the page is on its way
+		T after = loaded.isEmpty() ? null : keyOf.apply(loaded.get(loaded.size() - 1));
+		try {
+			ServiceExecutor.get().execute(() -> {
+				try {
+					List<T> page = loader.load(after, pageSize);
+					Platform.runLater(() -> append(page));
+				} catch (RuntimeException e) {
+					Platform.runLater(() -> {
+						loading = false;
+						exhausted = true;
+						onError.accept(e);
+					});
+				}
+			});
+			rejected = false;
+		} catch (RejectedExecutionException e) {
+			// the service threads are full: nothing is on its way, the next
+			// get() asks again. Reported once, not for every cell asking
+			loading = false;
+			if (!rejected) {
+				rejected = true;
+				Platform.runLater(() -> onError.accept(e));
+			}
+		}
+	}
+
+	private void append(List<T> page) {
+		loading = false;
+		if (disposed)
+			return;
+		int from = loaded.size();
+		loaded.addAll(page);
+		int to = loaded.size();
+		if (page.size() < pageSize)
+			exhausted = true;
+
+		beginChange();
+		// rows that were placeholders become real rows
+		for (int i = from; i < Math.min(to, size); i++)
+			nextSet(i, null);
+		if (to > size) {
+			// the cached count was too low
+			nextAdd(size, to);
+			size = to;
+		}
+		else if (exhausted && to < size) {
+			// ...or too high
+			nextRemove(to, Collections.<T>nCopies(size - to, null));
+			size = to;
+		}
+		endChange();
+
+		if (!exhausted && loaded.size() <= wanted)
+			requestUpTo(wanted - pageSize);
+	}
+}
@@ -0,0 +1,80 @@
+package gui.util;
+
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import model.services.ServiceExecutor;
+
+/*
+ * Small modal window following a background task: its message, a progress
+ * bar and a Cancel button. The task runs on the ServiceExecutor and the
+ * window closes by itself when call() has returned; what happens then is up
+ * to the task's own onSucceeded/onFailed handlers.
+ *
+ * Cancel only asks the task to stop (see CancellableTask): the window stays
+ * open showing "Cancelling..." until the task got to a point where it can,
+ * so the handlers see everything it did, and tell from its result (or the
+ * exception it failed with) that it was cancelled. Task.cancel() is not
+ * used, it would report the task as over while call() is still running.
+ */
+public class ProgressDialog {
+
+	public abstract static class CancellableTask<T> extends Task<T> {
+		private volatile boolean cancelRequested;
+
+		public void requestCancel() {
+			cancelRequested = true;
+		}
+
+		// for call() to check, it stops when it can and returns (or throws) as usual
+		public boolean isCancelRequested() {
+			return cancelRequested;
+		}
+	}
+
+	public static void show(Window owner, String title, CancellableTask<?> task) {
+		Label message = new Label();
+		message.textProperty().bind(task.messageProperty());
+		ProgressBar bar = new ProgressBar();
+		bar.setPrefWidth(320.0);
+		bar.progressProperty().bind(task.progressProperty());
+		Button cancelButton = new Button("Cancel");
+		Runnable cancel = () -> {
+			task.requestCancel();
+			cancelButton.setDisable(true);
+			message.textProperty().unbind();
+			message.setText("Cancelling...");
+		};
+		cancelButton.setOnAction(event -> cancel.run());
+
+		VBox box = new VBox(10.0, message, bar, cancelButton);
+		box.setPadding(new Insets(15.0));
+
+		Stage stage = new Stage();
+		stage.setTitle(title);
+		stage.setScene(new Scene(box));
+		stage.setResizable(false);
+		stage.initOwner(owner);
+		stage.initModality(Modality.WINDOW_MODAL);
+		stage.setOnCloseRequest(event -> {
+			// closes when the task is done
+			event.consume();
+			cancel.run();
+		});
+		task.stateProperty().addListener((obs, oldValue, newValue) -> {
+			if (newValue == Worker.State.SUCCEEDED || newValue == Worker.State.FAILED
+					|| newValue == Worker.State.CANCELLED)
+				stage.close();
+		});
+		stage.show();
+		ServiceExecutor.get().execute(task);
+	}
+}
@@ -1,15 +1,20 @@
 package gui.util;
 
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.event.ActionEvent;
 import javafx.scene.Node;
 import javafx.scene.control.DatePicker;
-import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
+import javafx.scene.layout.Region;
 import javafx.stage.Stage;
 import javafx.util.StringConverter;
 
@@ -19,6 +24,26 @@ public class Utils {
 		return (Stage) ((Node) event.getSource()).getScene().getWindow();
 	}
 
+	// for CompletableFuture callbacks that have to touch the UI
+	public static Executor fxExecutor() {
+		return Platform::runLater;
+	}
+
+	// the exception the async service call actually failed with
+	public static Throwable rootCause(Throwable e) {
+		while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null)
+			e = e.getCause();
+		return e;
+	}
+
+	// makes the control as tall as the window it ends up in
+	public static void bindHeightToWindow(Region region) {
+		region.sceneProperty().addListener((obs, oldScene, newScene) -> {
+			if (newScene != null && newScene.getWindow() != null && !region.prefHeightProperty().isBound())
+				region.prefHeightProperty().bind(newScene.getWindow().heightProperty());
+		});
+	}
+
 	// to help out in the parsing of int(id) values
 	public static Integer tryParseToInt(String str) {
 		try {
@@ -38,42 +63,23 @@ public class Utils {
 
 	}
 
-	// formatting date - stackoverflow
+	// formatting date - one formatter for the whole column
 	public static <T> void formatTableColumnDate(TableColumn<T, Date> tableColumn, String format) {
-		tableColumn.setCellFactory(column -> {
-			TableCell<T, Date> cell = new TableCell<T, Date>() {
-				private SimpleDateFormat sdf = new SimpleDateFormat(format);
-
-				@Override
-				protected void updateItem(Date item, boolean empty) {
-					super.updateItem(item, empty);
-					if (empty) {
-						setText(null);
-					} else {
-						setText(sdf.format(item));
-					}
-				}
-			};
-			return cell;
-		});
+		CellFormatter<Date> formatter = CellFormatter.date(format);
+		tableColumn.setCellFactory(column -> new FormattedTableCell<>(formatter));
 	}
 
 	// formatting double
 	public static <T> void formatTableColumnDouble(TableColumn<T, Double> tableColumn, int decimalPlaces) {
-		tableColumn.setCellFactory(column -> {
-			TableCell<T, Double> cell = new TableCell<T, Double>() {
-				@Override
-				protected void updateItem(Double item, boolean empty) {
-					super.updateItem(item, empty);
-					if (empty) {
-						setText(null);
-					} else {
-						setText(String.format("%." + decimalPlaces + "f", item));
-					}
-				}
-			};
-			return cell;
-		});
+		CellFormatter<Double> formatter = CellFormatter.decimal(decimalPlaces);
+		tableColumn.setCellFactory(column -> new FormattedTableCell<>(formatter));
+	}
+
+	// column of buttons acting on the row's object, e.g. edit and remove
+	public static <T> void buttonTableColumn(TableColumn<T, T> tableColumn, String text,
+			BiConsumer<T, ActionEvent> action) {
+		tableColumn.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
+		tableColumn.setCellFactory(column -> new ButtonTableCell<>(text, action));
 	}
 
 	//StackOverflow
@@ -0,0 +1,94 @@
+package gui.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.layout.Pane;
+import model.services.ServiceExecutor;
+
+/*
+ * Parses each view's FXML once and keeps its nodes and controller, so going
+ * back to a view reuses them instead of loading the file again. Views can
+ * be preloaded on a background thread (they aren't shown yet, so that's
+ * allowed); get() waits for a preload still running, or loads the view
+ * itself when nobody asked for it before.
+ */
+public class ViewRegistry {
+
+	public static class View {
+		private final List<Node> nodes;
+		private final Object controller;
+
+		View(List<Node> nodes, Object controller) {
+			this.nodes = nodes;
+			this.controller = controller;
+		}
+
+		// the children of the FXML's root, which go into the main VBox
+		public List<Node> getNodes() {
+			return nodes;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <T> T getController() {
+			return (T) controller;
+		}
+	}
+
+	private static final Map<String, CompletableFuture<View>> views = new ConcurrentHashMap<>();
+
+	// completes when all of them are parsed
+	public static CompletableFuture<Void> preload(String... absoluteNames) {
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[absoluteNames.length];
+		for (int i = 0; i < absoluteNames.length; i++) {
+			futures[i] = views.computeIfAbsent(absoluteNames[i], k -> ServiceExecutor.supply(() -> {
+				try {
+					return load(k);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}));
+		}
+		return CompletableFuture.allOf(futures);
+	}
+
+	public static View get(String absoluteName) throws IOException {
+		CompletableFuture<View> future = views.get(absoluteName);
+		if (future != null) {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				// the preload failed, load it here so the error reaches the caller
+				views.remove(absoluteName, future);
+			}
+		}
+		View view = load(absoluteName);
+		views.put(absoluteName, CompletableFuture.completedFuture(view));
+		return view;
+	}
+
+	public static boolean isLoaded(String absoluteName) {
+		CompletableFuture<View> future = views.get(absoluteName);
+		return future != null && future.isDone() && !future.isCompletedExceptionally();
+	}
+
+	private static View load(String absoluteName) throws IOException {
+		FXMLLoader loader = new FXMLLoader(ViewRegistry.class.getResource(absoluteName));
+		Parent root = loader.load();
+		List<Node> nodes = new ArrayList<>();
+		if (root instanceof Pane)
+			nodes.addAll(((Pane) root).getChildren());
+		else
+			nodes.add(root);
+		return new View(nodes, loader.getController());
+	}
+}
@@ -0,0 +1,19 @@
+package model.dao;
+
+import java.util.Collection;
+import java.util.List;
+
+import model.entities.ChangeLogEntry;
+
+// reads the changelog table the triggers in sql/changelog.sql fill
+public interface ChangeLogDao {
+
+	// highest Seq so far, 0 when the log is empty, -1 when there is no changelog table
+	long findLastSeq();
+	// lowest Seq still in the log (older ones may have been purged), same 0 and -1
+	long findFirstSeq();
+	// entries with Seq > afterSeq in Seq order, at most limit of them
+	List<ChangeLogEntry> findAfter(long afterSeq, int limit);
+	// the entries among these Seqs that exist (by now)
+	List<ChangeLogEntry> findBySeqs(Collection<Long> seqs);
+}
@@ -1,16 +1,67 @@
 package model.dao;
 
+import java.nio.file.Paths;
+
 import db.DB;
+import model.dao.impl.CachingDepartmentDao;
+import model.dao.impl.ChangeLogDaoJDBC;
 import model.dao.impl.DepartmentDaoJDBC;
+import model.dao.impl.ReportDaoJDBC;
+import model.dao.impl.SellerCache;
 import model.dao.impl.SellerDaoJDBC;
+import model.dao.metrics.DaoMetrics;
 
 public class DaoFactory {
 
+	// shared by every DAO so all of them see the same Department instances
+	private static CachingDepartmentDao departmentCache = null;
+	private static SellerCache sellerCache = null;
+	private static boolean metricsStarted = false;
+
+	// the DAOs that go to the database are timed unless metrics.enabled=false
+	private static synchronized <T> T withMetrics(Class<T> daoInterface, T dao) {
+		if (!Boolean.parseBoolean(DB.getProperty("metrics.enabled", "true")))
+			return dao;
+		if (!metricsStarted) {
+			String file = DB.getProperty("metrics.dumpFile", null);
+			if (file != null)
+				DaoMetrics.startDump(Paths.get(file), DB.getIntProperty("metrics.dumpIntervalMs", 60000));
+			metricsStarted = true;
+		}
+		return DaoMetrics.wrap(daoInterface, dao);
+	}
+
+	public static synchronized CachingDepartmentDao getDepartmentCache() {
+		if (departmentCache == null) {
+			DepartmentDaoJDBC dao = new DepartmentDaoJDBC(DB.getPool());
+			dao.setBatchSize(DB.getIntProperty("batch.size", 500));
+			departmentCache = new CachingDepartmentDao(withMetrics(DepartmentDao.class, dao),
+					DB.getIntProperty("cache.department.maxSize", 1000), DB.getIntProperty("cache.department.ttlMs", 600000));
+		}
+		return departmentCache;
+	}
+
+	public static synchronized SellerCache getSellerCache() {
+		if (sellerCache == null)
+			sellerCache = new SellerCache(DB.getIntProperty("cache.seller.maxSize", 10000));
+		return sellerCache;
+	}
+
 	public static SellerDao createSellerDao() {
-		return new SellerDaoJDBC(DB.getConnection());
+		SellerDaoJDBC dao = new SellerDaoJDBC(DB.getPool(), getDepartmentCache(), getSellerCache());
+		dao.setBatchSize(DB.getIntProperty("batch.size", 500));
+		return withMetrics(SellerDao.class, dao);
 	}
 	
 	public static DepartmentDao createDepartmentDao() {
-		return new DepartmentDaoJDBC(DB.getConnection());
+		return getDepartmentCache();
+	}
+	
+	public static ReportDao createReportDao() {
+		return withMetrics(ReportDao.class, new ReportDaoJDBC(DB.getPool(), getDepartmentCache()));
+	}
+	
+	public static ChangeLogDao createChangeLogDao() {
+		return withMetrics(ChangeLogDao.class, new ChangeLogDaoJDBC(DB.getPool()));
 	}
 }
@@ -9,6 +9,10 @@ public interface DepartmentDao {
 	void insert(Department obj);
 	void update(Department obj);
 	void deleteById(Integer id);
+	// batched versions, committed every batch.size rows
+	void insertAll(List<Department> list);
+	void updateAll(List<Department> list);
+	void deleteByIds(List<Integer> ids);
 	Department findById(Integer id);
 	List<Department> findAll();
 }
@@ -0,0 +1,12 @@
+package model.dao;
+
+import java.util.List;
+
+import model.entities.DepartmentStats;
+
+// read-only aggregates, computed by the database
+public interface ReportDao {
+
+	// one row per department, sellers or not, ordered by department name
+	List<DepartmentStats> findDepartmentStats();
+}
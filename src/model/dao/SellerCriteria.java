@@ -0,0 +1,196 @@
+package model.dao;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+ * Filters and sort order for SellerDao.findByCriteria. Every filter left as
+ * null is not applied. Rows are always ordered by the sort column and then
+ * by Id, which is also the key used to page through the results.
+ */
+public class SellerCriteria {
+
+	public enum SortColumn {
+		ID, NAME, EMAIL, BIRTH_DATE, BASE_SALARY, DEPARTMENT
+	}
+
+	private String namePrefix;
+	private String emailPrefix;
+	private Double minSalary;
+	private Double maxSalary;
+	private Date birthDateFrom;
+	private Date birthDateTo;
+	private Set<Integer> departmentIds = new LinkedHashSet<>();
+	private SortColumn sortColumn = SortColumn.NAME;
+	private boolean ascending = true;
+
+	public String getNamePrefix() {
+		return namePrefix;
+	}
+
+	public void setNamePrefix(String namePrefix) {
+		this.namePrefix = blankToNull(namePrefix);
+	}
+
+	public String getEmailPrefix() {
+		return emailPrefix;
+	}
+
+	public void setEmailPrefix(String emailPrefix) {
+		this.emailPrefix = blankToNull(emailPrefix);
+	}
+
+	public Double getMinSalary() {
+		return minSalary;
+	}
+
+	public void setMinSalary(Double minSalary) {
+		this.minSalary = minSalary;
+	}
+
+	public Double getMaxSalary() {
+		return maxSalary;
+	}
+
+	public void setMaxSalary(Double maxSalary) {
+		this.maxSalary = maxSalary;
+	}
+
+	public Date getBirthDateFrom() {
+		return birthDateFrom;
+	}
+
+	public void setBirthDateFrom(Date birthDateFrom) {
+		this.birthDateFrom = birthDateFrom;
+	}
+
+	public Date getBirthDateTo() {
+		return birthDateTo;
+	}
+
+	public void setBirthDateTo(Date birthDateTo) {
+		this.birthDateTo = birthDateTo;
+	}
+
+	public Set<Integer> getDepartmentIds() {
+		return departmentIds;
+	}
+
+	public void setDepartmentIds(Set<Integer> departmentIds) {
+		this.departmentIds = departmentIds == null ? new LinkedHashSet<>() : new LinkedHashSet<>(departmentIds);
+	}
+
+	public SortColumn getSortColumn() {
+		return sortColumn;
+	}
+
+	public void setSortColumn(SortColumn sortColumn) {
+		this.sortColumn = sortColumn == null ? SortColumn.NAME : sortColumn;
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	public void setAscending(boolean ascending) {
+		this.ascending = ascending;
+	}
+
+	public boolean hasFilters() {
+		return namePrefix != null || emailPrefix != null || minSalary != null || maxSalary != null
+				|| birthDateFrom != null || birthDateTo != null || !departmentIds.isEmpty();
+	}
+
+	// same test the database does, for rows changed after the query ran
+	public boolean matches(Seller obj) {
+		if (namePrefix != null && !startsWithIgnoreCase(obj.getName(), namePrefix))
+			return false;
+		if (emailPrefix != null && !startsWithIgnoreCase(obj.getEmail(), emailPrefix))
+			return false;
+		if (minSalary != null && (obj.getBaseSalary() == null || obj.getBaseSalary() < minSalary))
+			return false;
+		if (maxSalary != null && (obj.getBaseSalary() == null || obj.getBaseSalary() > maxSalary))
+			return false;
+		if (birthDateFrom != null && (obj.getBirthDate() == null || obj.getBirthDate().before(birthDateFrom)))
+			return false;
+		if (birthDateTo != null && (obj.getBirthDate() == null || obj.getBirthDate().after(birthDateTo)))
+			return false;
+		if (!departmentIds.isEmpty()
+				&& (obj.getDepartment() == null || !departmentIds.contains(obj.getDepartment().getId())))
+			return false;
+		return true;
+	}
+
+	// same order the database returns the rows in (MySQL compares strings case-insensitively)
+	public Comparator<Seller> comparator() {
+		Comparator<Seller> order;
+		switch (sortColumn) {
+		case ID:
+			order = Comparator.comparing(Seller::getId);
+			break;
+		case EMAIL:
+			order = Comparator.comparing(Seller::getEmail, String.CASE_INSENSITIVE_ORDER);
+			break;
+		case BIRTH_DATE:
+			order = Comparator.comparing(Seller::getBirthDate);
+			break;
+		case BASE_SALARY:
+			order = Comparator.comparing(Seller::getBaseSalary);
+			break;
+		case DEPARTMENT:
+			order = Comparator.comparing(obj -> obj.getDepartment().getName(), String.CASE_INSENSITIVE_ORDER);
+			break;
+		default:
+			order = Comparator.comparing(Seller::getName, String.CASE_INSENSITIVE_ORDER);
+		}
+		order = order.thenComparing(Seller::getId);
+		return ascending ? order : order.reversed();
+	}
+
+	// a new Seller with only obj's Id and sort column, all a page needs to start after it
+	public Seller keyOf(Seller obj) {
+		Seller key = new Seller();
+		key.setId(obj.getId());
+		switch (sortColumn) {
+		case ID:
+			break;
+		case EMAIL:
+			key.setEmail(obj.getEmail());
+			break;
+		case BIRTH_DATE:
+			key.setBirthDate(obj.getBirthDate() == null ? null : new Date(obj.getBirthDate().getTime()));
+			break;
+		case BASE_SALARY:
+			key.setBaseSalary(obj.getBaseSalary());
+			break;
+		case DEPARTMENT:
+			// department names are updated in place
+			key.setDepartment(new Department(obj.getDepartment().getId(), obj.getDepartment().getName()));
+			break;
+		default:
+			key.setName(obj.getName());
+		}
+		return key;
+	}
+
+	private static String blankToNull(String str) {
+		return str == null || str.trim().isEmpty() ? null : str.trim();
+	}
+
+	private static boolean startsWithIgnoreCase(String str, String prefix) {
+		return str != null && str.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	@Override
+	public String toString() {
+		return "SellerCriteria [namePrefix=" + namePrefix + ", emailPrefix=" + emailPrefix + ", minSalary="
+				+ minSalary + ", maxSalary=" + maxSalary + ", birthDateFrom=" + birthDateFrom + ", birthDateTo="
+				+ birthDateTo + ", departmentIds=" + departmentIds + ", sortColumn=" + sortColumn + ", ascending="
+				+ ascending + "]";
+	}
+}
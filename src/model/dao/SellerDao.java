@@ -1,6 +1,7 @@
 package model.dao;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import model.entities.Department;
 import model.entities.Seller;
@@ -10,7 +11,23 @@ public interface SellerDao {
 	void insert(Seller obj);
 	void update(Seller obj);
 	void deleteById(Integer id);
+	// batched versions, committed every batch.size rows
+	void insertAll(List<Seller> list);
+	void updateAll(List<Seller> list);
+	void deleteByIds(List<Integer> ids);
 	Seller findById(Integer id);
+	// always read from the database (the new rows replace the cached instances), ids not found are left out
+	List<Seller> findByIds(List<Integer> ids);
 	List<Seller> findAll();
 	List<Seller> findByDepartment(Department department);
+	// keyset pagination ordered by (Name, Id), after == null gives the first page
+	List<Seller> findPage(Seller after, int pageSize);
+	int count();
+	// filtered and sorted on the database, paged by (sort column, Id) like findPage
+	List<Seller> findByCriteria(SellerCriteria criteria, Seller after, int pageSize);
+	int countByCriteria(SellerCriteria criteria);
+	// rows are read as the stream is consumed, close the stream when done with it
+	Stream<Seller> streamAll();
+	// same, for the sellers of one department (the rows of findByDepartment)
+	Stream<Seller> streamByDepartment(Department department);
 }
@@ -0,0 +1,210 @@
+package model.dao.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.dao.DepartmentDao;
+import model.entities.Department;
+
+/*
+ * Read-through cache in front of another DepartmentDao. Departments are
+ * kept by id with a size limit (LRU) and a time to live, and every write
+ * through this DAO updates or drops the cached copies.
+ *
+ * The cached objects are also the canonical instances: SellerDaoJDBC asks
+ * for them through canonicalize(), so every loaded Seller of a department
+ * points to the same Department object.
+ */
+public class CachingDepartmentDao implements DepartmentDao {
+
+	private final DepartmentDao dao;
+	private final int maxSize;
+	private final long ttlMillis;
+
+	private final LinkedHashMap<Integer, CacheEntry> byId;
+	// result of the last findAll, in the database order
+	private List<Department> all;
+	private long allLoadedAt;
+
+	private static class CacheEntry {
+		final Department department;
+		long loadedAt;
+
+		CacheEntry(Department department, long loadedAt) {
+			this.department = department;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+	public CachingDepartmentDao(DepartmentDao dao, int maxSize, long ttlMillis) {
+		this.dao = dao;
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.byId = new LinkedHashMap<Integer, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CacheEntry> eldest) {
+				return size() > CachingDepartmentDao.this.maxSize;
+			}
+		};
+	}
+
+	private boolean fresh(long loadedAt) {
+		return System.currentTimeMillis() - loadedAt < ttlMillis;
+	}
+
+	// returns the shared instance for this department, refreshing its name
+	public synchronized Department canonicalize(Integer id, String name) {
+		CacheEntry entry = byId.get(id);
+		if (entry == null) {
+			entry = new CacheEntry(new Department(id, name), System.currentTimeMillis());
+			byId.put(id, entry);
+		}
+		else if (name != null && !name.equals(entry.department.getName())) {
+			entry.department.setName(name);
+		}
+		return entry.department;
+	}
+
+	private synchronized Department store(Department obj, long now) {
+		CacheEntry entry = byId.get(obj.getId());
+		if (entry == null) {
+			byId.put(obj.getId(), new CacheEntry(obj, now));
+			return obj;
+		}
+		entry.department.setName(obj.getName());
+		entry.loadedAt = now;
+		return entry.department;
+	}
+
+	@Override
+	public Department findById(Integer id) {
+		synchronized (this) {
+			CacheEntry entry = byId.get(id);
+			if (entry != null && fresh(entry.loadedAt))
+				return entry.department;
+		}
+		long now = System.currentTimeMillis();
+		Department obj = dao.findById(id);
+		if (obj == null) {
+			invalidate(id);
+			return null;
+		}
+		return store(obj, now);
+	}
+
+	@Override
+	public List<Department> findAll() {
+		synchronized (this) {
+			if (all != null && fresh(allLoadedAt))
+				return new ArrayList<>(all);
+		}
+		long now = System.currentTimeMillis();
+		List<Department> list = dao.findAll();
+		List<Department> canonical = new ArrayList<>(list.size());
+		synchronized (this) {
+			for (Department obj : list)
+				canonical.add(store(obj, now));
+			all = canonical;
+			allLoadedAt = now;
+		}
+		return new ArrayList<>(canonical);
+	}
+
+	@Override
+	public void insert(Department obj) {
+		dao.insert(obj);
+		store(obj, System.currentTimeMillis());
+		invalidateAll();
+	}
+
+	@Override
+	public void update(Department obj) {
+		dao.update(obj);
+		store(obj, System.currentTimeMillis());
+		invalidateAll();
+	}
+
+	@Override
+	public void deleteById(Integer id) {
+		dao.deleteById(id);
+		invalidate(id);
+	}
+
+	@Override
+	public void insertAll(List<Department> list) {
+		dao.insertAll(list);
+		long now = System.currentTimeMillis();
+		for (Department obj : list)
+			store(obj, now);
+		invalidateAll();
+	}
+
+	@Override
+	public void updateAll(List<Department> list) {
+		dao.updateAll(list);
+		long now = System.currentTimeMillis();
+		for (Department obj : list)
+			store(obj, now);
+		invalidateAll();
+	}
+
+	@Override
+	public void deleteByIds(List<Integer> ids) {
+		try {
+			dao.deleteByIds(ids);
+		}
+		finally {
+			// some of them may be gone even if a later batch failed
+			for (Integer id : ids)
+				invalidate(id);
+		}
+	}
+
+	// a findAll result from elsewhere (the local snapshot), answered until the ttl passes
+	public synchronized void seedAll(List<Department> list) {
+		if (all != null)
+			return;
+		long now = System.currentTimeMillis();
+		List<Department> canonical = new ArrayList<>(list.size());
+		for (Department obj : list)
+			canonical.add(store(obj, now));
+		all = canonical;
+		allLoadedAt = now;
+	}
+
+	// reads the department again, updating the shared instance; null if it is gone
+	public Department refresh(Integer id) {
+		long now = System.currentTimeMillis();
+		Department obj = dao.findById(id);
+		if (obj == null) {
+			invalidate(id);
+			return null;
+		}
+		Department canonical = store(obj, now);
+		invalidateAll();
+		return canonical;
+	}
+
+	public synchronized void invalidate(Integer id) {
+		byId.remove(id);
+		all = null;
+	}
+
+	// only drops the cached findAll result, the instances stay canonical
+	public synchronized void invalidateAll() {
+		all = null;
+	}
+
+	public synchronized void clear() {
+		byId.clear();
+		all = null;
+	}
+
+	public synchronized int size() {
+		return byId.size();
+	}
+}
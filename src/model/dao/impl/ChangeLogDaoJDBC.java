@@ -0,0 +1,135 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import db.ConnectionPool;
+import db.DB;
+import db.DbException;
+import model.dao.ChangeLogDao;
+import model.entities.ChangeLogEntry;
+
+public class ChangeLogDaoJDBC implements ChangeLogDao {
+
+	private static final String COLUMNS = "SELECT Seq, TableName, RowId, Op, ClientId FROM changelog ";
+	// SQLState of "table doesn't exist", sql/changelog.sql was not run
+	private static final String NO_SUCH_TABLE = "42S02";
+	// Seqs per IN list
+	private static final int MAX_IN = 128;
+
+	private ConnectionPool pool;
+
+	public ChangeLogDaoJDBC(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public long findLastSeq() {
+		return findSeq("SELECT MAX(Seq) FROM changelog");
+	}
+
+	@Override
+	public long findFirstSeq() {
+		return findSeq("SELECT MIN(Seq) FROM changelog");
+	}
+
+	// MIN/MAX give NULL on an empty log, which getLong reads as 0
+	private long findSeq(String sql) {
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			st = conn.prepareStatement(sql);
+			rs = st.executeQuery();
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+		catch (SQLException e) {
+			if (NO_SUCH_TABLE.equals(e.getSQLState()))
+				return -1;
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public List<ChangeLogEntry> findAfter(long afterSeq, int limit) {
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			// a range scan on the primary key, cheap however long the log is
+			st = conn.prepareStatement(COLUMNS + "WHERE Seq > ? ORDER BY Seq LIMIT ?");
+			st.setLong(1, afterSeq);
+			st.setInt(2, limit);
+			rs = st.executeQuery();
+			return instantiateEntries(rs);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public List<ChangeLogEntry> findBySeqs(Collection<Long> seqs) {
+		List<ChangeLogEntry> list = new ArrayList<>(seqs.size());
+		if (seqs.isEmpty())
+			return list;
+		// sorted, so the chunks come back in Seq order one after the other
+		List<Long> sorted = new ArrayList<>(seqs);
+		Collections.sort(sorted);
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			for (int from = 0; from < sorted.size(); from += MAX_IN) {
+				List<Long> chunk = sorted.subList(from, Math.min(from + MAX_IN, sorted.size()));
+				int size = JdbcBatch.inListSize(chunk.size(), MAX_IN);
+				st = conn.prepareStatement(COLUMNS + "WHERE Seq IN (" + JdbcBatch.inList(size) + ") ORDER BY Seq");
+				for (int i = 0; i < size; i++)
+					st.setLong(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+				rs = st.executeQuery();
+				list.addAll(instantiateEntries(rs));
+				DB.closeResultSet(rs);
+				rs = null;
+				DB.closeStatement(st);
+				st = null;
+			}
+			return list;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	private List<ChangeLogEntry> instantiateEntries(ResultSet rs) throws SQLException {
+		List<ChangeLogEntry> list = new ArrayList<>();
+		while (rs.next()) {
+			list.add(new ChangeLogEntry(rs.getLong("Seq"), rs.getString("TableName"), rs.getInt("RowId"),
+					ChangeLogEntry.Operation.fromCode(rs.getString("Op")), rs.getString("ClientId")));
+		}
+		return list;
+	}
+}
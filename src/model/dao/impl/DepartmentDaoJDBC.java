@@ -8,6 +8,7 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
+import db.ConnectionPool;
 import db.DB;
 import db.DbException;
 import db.DbIntegrityException;
@@ -16,17 +17,27 @@ import model.entities.Department;
 
 public class DepartmentDaoJDBC implements DepartmentDao {
 
-	private Connection conn;
+	private ConnectionPool pool;
 	
-	public DepartmentDaoJDBC(Connection conn) {
-		this.conn = conn;
+	private int batchSize = 500;
+	
+	public DepartmentDaoJDBC(ConnectionPool pool) {
+		this.pool = pool;
+	}
+	
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		this.batchSize = batchSize;
 	}
 	
 	@Override
 	public Department findById(Integer id) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 				"SELECT * FROM department WHERE Id = ?");
 			st.setInt(1, id);
@@ -45,14 +56,17 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public List<Department> findAll() {
+		Connection conn = null;
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 				"SELECT * FROM department ORDER BY Name");
 			rs = st.executeQuery();
@@ -73,13 +87,16 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public void insert(Department obj) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 				"INSERT INTO department " +
 				"(Name) " +
@@ -107,13 +124,16 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		} 
 		finally {
 			DB.closeStatement(st);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public void update(Department obj) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 				"UPDATE department " +
 				"SET Name = ? " +
@@ -129,13 +149,16 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		} 
 		finally {
 			DB.closeStatement(st);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public void deleteById(Integer id) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 				"DELETE FROM department WHERE Id = ?");
 
@@ -148,6 +171,69 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		} 
 		finally {
 			DB.closeStatement(st);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public void insertAll(List<Department> list) {
+		Connection conn = null;
+		try {
+			conn = pool.getConnection();
+			JdbcBatch.execute(conn,
+				"INSERT INTO department " +
+				"(Name) " +
+				"VALUES " +
+				"(?)",
+				list, batchSize,
+				(st, obj) -> st.setString(1, obj.getName()),
+				Department::setId);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public void updateAll(List<Department> list) {
+		Connection conn = null;
+		try {
+			conn = pool.getConnection();
+			JdbcBatch.execute(conn,
+				"UPDATE department " +
+				"SET Name = ? " +
+				"WHERE Id = ?",
+				list, batchSize,
+				(st, obj) -> {
+					st.setString(1, obj.getName());
+					st.setInt(2, obj.getId());
+				},
+				null);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public void deleteByIds(List<Integer> ids) {
+		Connection conn = null;
+		try {
+			conn = pool.getConnection();
+			JdbcBatch.execute(conn, "DELETE FROM department WHERE Id = ?", ids, batchSize,
+				(st, id) -> st.setInt(1, id), null);
+		}
+		catch (SQLException e) {
+			throw new DbIntegrityException(e.getMessage());
+		}
+		finally {
+			DB.closeConnection(conn);
 		}
 	}
 }
@@ -0,0 +1,109 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import db.DB;
+
+/*
+ * Runs one statement over a list of rows with JDBC batching, committing after
+ * every batchSize rows. When the connection is already inside a transaction
+ * (auto-commit off) nothing is committed here, the caller owns the commit.
+ */
+class JdbcBatch {
+
+	// IN lists are padded to one of these lengths (or the chunk size), so each
+	// statement has a handful of texts in the statement cache, not one per count
+	private static final int[] IN_SIZES = { 1, 8, 32, 128 };
+
+	@FunctionalInterface
+	interface Binder<T> {
+		void bind(PreparedStatement st, T obj) throws SQLException;
+	}
+
+	@FunctionalInterface
+	interface KeySetter<T> {
+		void setKey(T obj, int key);
+	}
+
+	static <T> void execute(Connection conn, String sql, List<T> list, int batchSize, Binder<T> binder,
+			KeySetter<T> keySetter) throws SQLException {
+		if (list.isEmpty())
+			return;
+		boolean ownTransaction = conn.getAutoCommit();
+		PreparedStatement st = null;
+		try {
+			if (ownTransaction)
+				conn.setAutoCommit(false);
+			st = keySetter != null
+					? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+					: conn.prepareStatement(sql);
+
+			for (int from = 0; from < list.size(); from += batchSize) {
+				List<T> chunk = list.subList(from, Math.min(from + batchSize, list.size()));
+				for (T obj : chunk) {
+					binder.bind(st, obj);
+					st.addBatch();
+				}
+				st.executeBatch();
+				int[] keys = keySetter != null ? readKeys(st, chunk.size()) : null;
+				if (ownTransaction)
+					conn.commit();
+				// only once committed, an object with an Id is a row that exists
+				if (keys != null) {
+					for (int i = 0; i < keys.length; i++)
+						keySetter.setKey(chunk.get(i), keys[i]);
+				}
+			}
+		}
+		catch (SQLException e) {
+			// only the current chunk is lost, earlier chunks are already committed
+			if (ownTransaction)
+				conn.rollback();
+			throw e;
+		}
+		finally {
+			DB.closeStatement(st);
+			if (ownTransaction)
+				conn.setAutoCommit(true);
+		}
+	}
+
+	private static int[] readKeys(PreparedStatement st, int count) throws SQLException {
+		ResultSet rs = st.getGeneratedKeys();
+		try {
+			// keys come back in the same order the rows were added to the batch
+			int[] keys = new int[count];
+			for (int i = 0; i < count; i++) {
+				if (!rs.next())
+					throw new SQLException("Missing generated key for batched insert");
+				keys[i] = rs.getInt(1);
+			}
+			return keys;
+		}
+		finally {
+			DB.closeResultSet(rs);
+		}
+	}
+
+	// the padded length for n values, never more than max
+	static int inListSize(int n, int max) {
+		for (int size : IN_SIZES) {
+			if (n <= size && size <= max)
+				return size;
+		}
+		return max;
+	}
+
+	// "?,?,...,?" with size markers
+	static String inList(int size) {
+		StringBuilder sb = new StringBuilder(size * 2);
+		for (int i = 0; i < size; i++)
+			sb.append(i == 0 ? "?" : ",?");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,99 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import db.ConnectionPool;
+import db.DB;
+import db.DbException;
+import model.dao.ReportDao;
+import model.entities.DepartmentStats;
+
+/*
+ * All the figures come from a single GROUP BY over seller joined to
+ * department, so the database reads the sellers once and only one row per
+ * department comes back, however many sellers there are. The age groups
+ * are conditional sums on BirthDate against dates computed here, which
+ * leaves BirthDate itself untouched (no function on the column).
+ */
+public class ReportDaoJDBC implements ReportDao {
+
+	private ConnectionPool pool;
+	private CachingDepartmentDao departments;
+
+	private static final String DEPARTMENT_STATS = buildDepartmentStats();
+
+	public ReportDaoJDBC(ConnectionPool pool, CachingDepartmentDao departments) {
+		this.pool = pool;
+		this.departments = departments;
+	}
+
+	private static String buildDepartmentStats() {
+		StringBuilder sql = new StringBuilder("SELECT department.Id, department.Name, COUNT(seller.Id) AS Headcount, "
+				+ "SUM(seller.BaseSalary) AS TotalSalary, AVG(seller.BaseSalary) AS AvgSalary, "
+				+ "MIN(seller.BaseSalary) AS MinSalary, MAX(seller.BaseSalary) AS MaxSalary");
+		// born after today minus the limit means younger than the limit
+		int limits = DepartmentStats.AGE_LIMITS.length;
+		sql.append(", SUM(CASE WHEN seller.BirthDate > ? THEN 1 ELSE 0 END)");
+		for (int i = 1; i < limits; i++)
+			sql.append(", SUM(CASE WHEN seller.BirthDate <= ? AND seller.BirthDate > ? THEN 1 ELSE 0 END)");
+		sql.append(", SUM(CASE WHEN seller.BirthDate <= ? THEN 1 ELSE 0 END) ");
+		sql.append("FROM department LEFT JOIN seller ON seller.DepartmentId = department.Id "
+				+ "GROUP BY department.Id, department.Name ORDER BY department.Name");
+		return sql.toString();
+	}
+
+	@Override
+	public List<DepartmentStats> findDepartmentStats() {
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			st = conn.prepareStatement(DEPARTMENT_STATS);
+			int[] limits = DepartmentStats.AGE_LIMITS;
+			LocalDate today = LocalDate.now();
+			int p = 1;
+			st.setDate(p++, java.sql.Date.valueOf(today.minusYears(limits[0])));
+			for (int i = 1; i < limits.length; i++) {
+				st.setDate(p++, java.sql.Date.valueOf(today.minusYears(limits[i - 1])));
+				st.setDate(p++, java.sql.Date.valueOf(today.minusYears(limits[i])));
+			}
+			st.setDate(p++, java.sql.Date.valueOf(today.minusYears(limits[limits.length - 1])));
+			rs = st.executeQuery();
+
+			List<DepartmentStats> list = new ArrayList<>();
+			while (rs.next()) {
+				DepartmentStats obj = new DepartmentStats(departments.canonicalize(rs.getInt(1), rs.getString(2)));
+				obj.setHeadcount(rs.getInt(3));
+				obj.setTotalSalary(getDouble(rs, 4));
+				obj.setAvgSalary(getDouble(rs, 5));
+				obj.setMinSalary(getDouble(rs, 6));
+				obj.setMaxSalary(getDouble(rs, 7));
+				for (int i = 0; i <= limits.length; i++)
+					obj.setAgeGroup(i, rs.getInt(8 + i));
+				list.add(obj);
+			}
+			return list;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	// null for the departments without sellers
+	private static Double getDouble(ResultSet rs, int column) throws SQLException {
+		double value = rs.getDouble(column);
+		return rs.wasNull() ? null : value;
+	}
+}
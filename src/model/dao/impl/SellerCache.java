@@ -0,0 +1,152 @@
+package model.dao.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import model.entities.Seller;
+
+/*
+ * Identity map for sellers: while any part of the application still holds a
+ * Seller, it is the current instance for its Id and looking the Id up gives
+ * it back. A Seller in here is never changed: the views read them on the FX
+ * thread while the DAOs run on others, so a newer row for the Id is a new
+ * instance that takes its place, and reaches the views in a DataChangeEvent.
+ * On top of that an optional bounded LRU keeps the most recently used
+ * sellers alive, so findById can answer without going to the database.
+ */
+public class SellerCache {
+
+	private final int maxSize;
+
+	private final Map<Integer, IdReference> identity = new HashMap<>();
+	private final ReferenceQueue<Seller> collected = new ReferenceQueue<>();
+	// second level, strong references in LRU order
+	private final LinkedHashMap<Integer, Seller> recent;
+
+	private long hits;
+	private long misses;
+
+	private static class IdReference extends WeakReference<Seller> {
+		final Integer id;
+
+		IdReference(Seller obj, ReferenceQueue<Seller> queue) {
+			super(obj, queue);
+			this.id = obj.getId();
+		}
+	}
+
+	public SellerCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.recent = new LinkedHashMap<Integer, Seller>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Seller> eldest) {
+				return size() > SellerCache.this.maxSize;
+			}
+		};
+	}
+
+	// cached instance for this id, or null
+	public synchronized Seller get(Integer id) {
+		Seller obj = lookup(id);
+		if (obj != null)
+			hits++;
+		else
+			misses++;
+		return obj;
+	}
+
+	// same as get, without counting it as a cache access
+	public synchronized Seller peek(Integer id) {
+		return lookup(id);
+	}
+
+	private Seller lookup(Integer id) {
+		Seller obj = recent.get(id);
+		if (obj != null)
+			return obj;
+		IdReference ref = identity.get(id);
+		obj = ref == null ? null : ref.get();
+		if (obj != null && maxSize > 0)
+			recent.put(id, obj);
+		return obj;
+	}
+
+	/*
+	 * Makes obj the current instance for its Id, in place of the one known
+	 * (which keeps its data), and returns it. obj must not be changed after
+	 * this, other threads may be reading it.
+	 */
+	public synchronized Seller merge(Seller obj) {
+		purge();
+		if (lookup(obj.getId()) != obj) {
+			identity.put(obj.getId(), new IdReference(obj, collected));
+			if (maxSize > 0)
+				recent.put(obj.getId(), obj);
+		}
+		return obj;
+	}
+
+	// like merge, but an instance already known keeps its data (obj may be older)
+	public synchronized Seller putIfAbsent(Seller obj) {
+		purge();
+		Seller known = lookup(obj.getId());
+		if (known != null)
+			return known;
+		identity.put(obj.getId(), new IdReference(obj, collected));
+		if (maxSize > 0)
+			recent.put(obj.getId(), obj);
+		return obj;
+	}
+
+	public synchronized void evict(Integer id) {
+		identity.remove(id);
+		recent.remove(id);
+	}
+
+	public synchronized void clear() {
+		identity.clear();
+		recent.clear();
+	}
+
+	// drops identity entries whose Seller was garbage collected
+	private void purge() {
+		IdReference ref;
+		while ((ref = (IdReference) collected.poll()) != null) {
+			if (identity.get(ref.id) == ref)
+				identity.remove(ref.id);
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	public synchronized int size() {
+		purge();
+		return identity.size();
+	}
+
+	public synchronized int getSecondLevelSize() {
+		return recent.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SellerCache [size=" + size() + ", secondLevel=" + recent.size() + ", hits=" + hits + ", misses="
+				+ misses + "]";
+	}
+}
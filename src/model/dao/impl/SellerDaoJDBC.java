@@ -5,30 +5,53 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.mysql.jdbc.Statement;
 
+import db.ConnectionPool;
 import db.DB;
 import db.DbException;
+import model.dao.SellerCriteria;
 import model.dao.SellerDao;
 import model.entities.Department;
 import model.entities.Seller;
 
 public class SellerDaoJDBC implements SellerDao {
 
-	private Connection conn;
+	private ConnectionPool pool;
 	
-	public SellerDaoJDBC(Connection conn) {
-		this.conn = conn;
+	// hands out the shared Department instances
+	private CachingDepartmentDao departments;
+	
+	// identity map, the current Seller instance of each Id
+	private SellerCache cache;
+	
+	private int batchSize = 500;
+	
+	public SellerDaoJDBC(ConnectionPool pool, CachingDepartmentDao departments, SellerCache cache) {
+		this.pool = pool;
+		this.departments = departments;
+		this.cache = cache;
+	}
+	
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		this.batchSize = batchSize;
 	}
 	
 	@Override
 	public void insert(Seller obj) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 					"INSERT INTO seller "
 					+ "(Name, Email, BirthDate, BaseSalary, DepartmentId) "
@@ -49,6 +72,7 @@ public class SellerDaoJDBC implements SellerDao {
 				if (rs.next()) {
 					int id = rs.getInt(1);
 					obj.setId(id);
+					cache.merge(obj);
 				}
 				DB.closeResultSet(rs);
 			}
@@ -61,13 +85,16 @@ public class SellerDaoJDBC implements SellerDao {
 		}
 		finally {
 			DB.closeStatement(st);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public void update(Seller obj) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 					"UPDATE seller "
 					+ "SET Name = ?, Email = ?, BirthDate = ?, BaseSalary = ?, DepartmentId = ? "
@@ -81,38 +108,49 @@ public class SellerDaoJDBC implements SellerDao {
 			st.setInt(6, obj.getId());
 			
 			st.executeUpdate();
+			cache.merge(obj);
 		}
 		catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		}
 		finally {
 			DB.closeStatement(st);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public void deleteById(Integer id) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement("DELETE FROM seller WHERE Id = ?");
 			
 			st.setInt(1, id);
 			
 			st.executeUpdate();
+			cache.evict(id);
 		}
 		catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		}
 		finally {
 			DB.closeStatement(st);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public Seller findById(Integer id) {
+		Seller cached = cache.get(id);
+		if (cached != null)
+			return cached;
+		Connection conn = null;
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 					"SELECT seller.*,department.Name as DepName "
 					+ "FROM seller INNER JOIN department "
@@ -122,9 +160,7 @@ public class SellerDaoJDBC implements SellerDao {
 			st.setInt(1, id);
 			rs = st.executeQuery();
 			if (rs.next()) {
-				Department dep = instantiateDepartment(rs);
-				Seller obj = instantiateSeller(rs, dep);
-				return obj;
+				return new SellerRowMapper(rs, departments, cache).map(rs);
 			}
 			return null;
 		}
@@ -134,33 +170,66 @@ public class SellerDaoJDBC implements SellerDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
 
-	private Seller instantiateSeller(ResultSet rs, Department dep) throws SQLException {
-		Seller obj = new Seller();
-		obj.setId(rs.getInt("Id"));
-		obj.setName(rs.getString("Name"));
-		obj.setEmail(rs.getString("Email"));
-		obj.setBaseSalary(rs.getDouble("BaseSalary"));
-		//so it uses Date.util and not Date.sql
-		obj.setBirthDate(new java.util.Date(rs.getTimestamp("BirthDate").getTime()));
-		obj.setDepartment(dep);
-		return obj;
+	@Override
+	public List<Seller> findByIds(List<Integer> ids) {
+		List<Seller> list = new ArrayList<>(ids.size());
+		if (ids.isEmpty())
+			return list;
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			for (int from = 0; from < ids.size(); from += batchSize) {
+				List<Integer> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+				// padded with the last Id, a repeated value matches nothing new
+				int size = JdbcBatch.inListSize(chunk.size(), batchSize);
+				st = conn.prepareStatement(
+						"SELECT seller.*,department.Name as DepName "
+						+ "FROM seller INNER JOIN department "
+						+ "ON seller.DepartmentId = department.Id "
+						+ "WHERE seller.Id IN (" + JdbcBatch.inList(size) + ")");
+				for (int i = 0; i < size; i++)
+					st.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+				rs = st.executeQuery();
+				list.addAll(instantiateSellers(rs));
+				DB.closeResultSet(rs);
+				rs = null;
+				DB.closeStatement(st);
+				st = null;
+			}
+			return list;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
 	}
 
-	private Department instantiateDepartment(ResultSet rs) throws SQLException {
-		Department dep = new Department();
-		dep.setId(rs.getInt("DepartmentId"));
-		dep.setName(rs.getString("DepName"));
-		return dep;
+	private List<Seller> instantiateSellers(ResultSet rs) throws SQLException {
+		List<Seller> list = new ArrayList<>();
+		SellerRowMapper mapper = new SellerRowMapper(rs, departments, cache);
+		while (rs.next()) {
+			list.add(mapper.map(rs));
+		}
+		return list;
 	}
 
 	@Override
 	public List<Seller> findAll() {
+		Connection conn = null;
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 					"SELECT seller.*,department.Name as DepName "
 					+ "FROM seller INNER JOIN department "
@@ -169,22 +238,7 @@ public class SellerDaoJDBC implements SellerDao {
 			
 			rs = st.executeQuery();
 			
-			List<Seller> list = new ArrayList<>();
-			Map<Integer, Department> map = new HashMap<>();
-			
-			while (rs.next()) {
-				
-				Department dep = map.get(rs.getInt("DepartmentId"));
-				
-				if (dep == null) {
-					dep = instantiateDepartment(rs);
-					map.put(rs.getInt("DepartmentId"), dep);
-				}
-				
-				Seller obj = instantiateSeller(rs, dep);
-				list.add(obj);
-			}
-			return list;
+			return instantiateSellers(rs);
 		}
 		catch (SQLException e) {
 			throw new DbException(e.getMessage());
@@ -192,14 +246,17 @@ public class SellerDaoJDBC implements SellerDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
 		}
 	}
 
 	@Override
 	public List<Seller> findByDepartment(Department department) {
+		Connection conn = null;
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
+			conn = pool.getConnection();
 			st = conn.prepareStatement(
 					"SELECT seller.*,department.Name as DepName "
 					+ "FROM seller INNER JOIN department "
@@ -211,22 +268,67 @@ public class SellerDaoJDBC implements SellerDao {
 			
 			rs = st.executeQuery();
 			
-			List<Seller> list = new ArrayList<>();
-			Map<Integer, Department> map = new HashMap<>();
+			return instantiateSellers(rs);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public List<Seller> findPage(Seller after, int pageSize) {
+		// default criteria: no filters, ORDER BY seller.Name, seller.Id
+		return findByCriteria(new SellerCriteria(), after, pageSize);
+	}
+
+	@Override
+	public int count() {
+		return countByCriteria(new SellerCriteria());
+	}
+
+	@Override
+	public List<Seller> findByCriteria(SellerCriteria criteria, Seller after, int pageSize) {
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			SellerQuery query = SellerQuery.select(criteria, after, pageSize);
+			st = conn.prepareStatement(query.getSql());
+			query.bind(st);
+			
+			rs = st.executeQuery();
+			
+			return instantiateSellers(rs);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public int countByCriteria(SellerCriteria criteria) {
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			SellerQuery query = SellerQuery.count(criteria);
+			st = conn.prepareStatement(query.getSql());
+			query.bind(st);
 			
-			while (rs.next()) {
-				
-				Department dep = map.get(rs.getInt("DepartmentId"));
-				
-				if (dep == null) {
-					dep = instantiateDepartment(rs);
-					map.put(rs.getInt("DepartmentId"), dep);
-				}
-				
-				Seller obj = instantiateSeller(rs, dep);
-				list.add(obj);
-			}
-			return list;
+			rs = st.executeQuery();
+			return rs.next() ? rs.getInt(1) : 0;
 		}
 		catch (SQLException e) {
 			throw new DbException(e.getMessage());
@@ -234,6 +336,235 @@ public class SellerDaoJDBC implements SellerDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public void insertAll(List<Seller> list) {
+		Connection conn = null;
+		try {
+			conn = pool.getConnection();
+			JdbcBatch.execute(conn,
+					"INSERT INTO seller "
+					+ "(Name, Email, BirthDate, BaseSalary, DepartmentId) "
+					+ "VALUES "
+					+ "(?, ?, ?, ?, ?)",
+					list, batchSize,
+					(st, obj) -> {
+						st.setString(1, obj.getName());
+						st.setString(2, obj.getEmail());
+						st.setDate(3, new java.sql.Date(obj.getBirthDate().getTime()));
+						st.setDouble(4, obj.getBaseSalary());
+						st.setInt(5, obj.getDepartment().getId());
+					},
+					Seller::setId);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeConnection(conn);
+		}
+		for (Seller obj : list)
+			cache.merge(obj);
+	}
+
+	@Override
+	public void updateAll(List<Seller> list) {
+		Connection conn = null;
+		try {
+			conn = pool.getConnection();
+			JdbcBatch.execute(conn,
+					"UPDATE seller "
+					+ "SET Name = ?, Email = ?, BirthDate = ?, BaseSalary = ?, DepartmentId = ? "
+					+ "WHERE Id = ?",
+					list, batchSize,
+					(st, obj) -> {
+						st.setString(1, obj.getName());
+						st.setString(2, obj.getEmail());
+						st.setDate(3, new java.sql.Date(obj.getBirthDate().getTime()));
+						st.setDouble(4, obj.getBaseSalary());
+						st.setInt(5, obj.getDepartment().getId());
+						st.setInt(6, obj.getId());
+					},
+					null);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeConnection(conn);
+		}
+		for (Seller obj : list)
+			cache.merge(obj);
+	}
+
+	@Override
+	public void deleteByIds(List<Integer> ids) {
+		Connection conn = null;
+		try {
+			conn = pool.getConnection();
+			JdbcBatch.execute(conn, "DELETE FROM seller WHERE Id = ?", ids, batchSize,
+					(st, id) -> st.setInt(1, id), null);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			// some of them may be gone even if a later batch failed
+			for (Integer id : ids)
+				cache.evict(id);
+			DB.closeConnection(conn);
+		}
+	}
+
+	@Override
+	public Stream<Seller> streamAll() {
+		return stream(null);
+	}
+
+	@Override
+	public Stream<Seller> streamByDepartment(Department department) {
+		return stream(department.getId());
+	}
+
+	// all sellers, or those of one department when departmentId isn't null
+	private Stream<Seller> stream(Integer departmentId) {
+		Connection conn = null;
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			conn = pool.getConnection();
+			// not through the statement cache, it stays busy as long as the stream is open
+			st = conn.prepareStatement(
+					"SELECT seller.*,department.Name as DepName "
+					+ "FROM seller INNER JOIN department "
+					+ "ON seller.DepartmentId = department.Id "
+					+ (departmentId != null ? "WHERE seller.DepartmentId = ? " : "")
+					+ "ORDER BY seller.Name, seller.Id",
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			if (departmentId != null)
+				st.setInt(1, departmentId);
+			// Connector/J: stream the rows one by one instead of buffering the whole result
+			st.setFetchSize(Integer.MIN_VALUE);
+			rs = st.executeQuery();
+			
+			// a one-off walk over the table, kept out of the identity map
+			StreamCloser closer = new StreamCloser(conn, st, rs);
+			SellerRowMapper mapper = new SellerRowMapper(rs, departments, null);
+			return StreamSupport.stream(new SellerSpliterator(rs, mapper, closer), false).onClose(closer);
+		}
+		catch (SQLException e) {
+			new StreamCloser(conn, st, rs).run();
+			throw new DbException(e.getMessage());
+		}
+		catch (RuntimeException e) {
+			new StreamCloser(conn, st, rs).run();
+			throw e;
+		}
+	}
+
+	/*
+	 * Closes what the stream holds, once. Closed before the last row was read
+	 * (an export cancelled half way), Connector/J would read every row left
+	 * while closing the result set; the query is stopped and the connection
+	 * aborted instead, the pool drops it and opens another one.
+	 */
+	private static class StreamCloser implements Runnable {
+		private Connection conn;
+		private PreparedStatement st;
+		private ResultSet rs;
+		// every row was read, or reading failed: nothing left to stop
+		private boolean done;
+
+		StreamCloser(Connection conn, PreparedStatement st, ResultSet rs) {
+			this.conn = conn;
+			this.st = st;
+			this.rs = rs;
+		}
+
+		synchronized void done() {
+			done = true;
+			run();
+		}
+
+		@Override
+		public synchronized void run() {
+			if (rs != null && !done) {
+				abandon();
+				return;
+			}
+			try {
+				DB.closeResultSet(rs);
+				DB.closeStatement(st);
+			}
+			finally {
+				DB.closeConnection(conn);
+				conn = null;
+				st = null;
+				rs = null;
+			}
+		}
+
+		private void abandon() {
+			try {
+				st.cancel();
+			} catch (SQLException e) {
+				// the abort below ends it anyway
+			}
+			try {
+				conn.abort(Runnable::run);
+			} catch (SQLException | RuntimeException e) {
+				// closing the result set will read the rest, slow but done
+			}
+			try {
+				rs.close();
+				st.close();
+			} catch (SQLException e) {
+				// the connection is gone, so are they
+			}
+			finally {
+				DB.closeConnection(conn);
+				conn = null;
+				st = null;
+				rs = null;
+			}
+		}
+	}
+
+	// also releases the connection as soon as the last row has been read
+	private static class SellerSpliterator extends Spliterators.AbstractSpliterator<Seller> {
+		private final ResultSet rs;
+		private final SellerRowMapper mapper;
+		private final StreamCloser closer;
+		private boolean done;
+
+		SellerSpliterator(ResultSet rs, SellerRowMapper mapper, StreamCloser closer) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.rs = rs;
+			this.mapper = mapper;
+			this.closer = closer;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Seller> action) {
+			if (done)
+				return false;
+			try {
+				if (!rs.next()) {
+					done = true;
+					closer.done();
+					return false;
+				}
+				action.accept(mapper.map(rs));
+				return true;
+			}
+			catch (SQLException e) {
+				done = true;
+				closer.done();
+				throw new DbException(e.getMessage());
+			}
 		}
 	}
 }
@@ -0,0 +1,196 @@
+package model.dao.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.dao.SellerCriteria;
+import model.entities.Seller;
+
+/*
+ * Turns a SellerCriteria into parameterized SQL. Criteria that only differ in
+ * their values have the same shape and so the same SQL text, which is built
+ * once and kept in SHAPES (and, being the same text, also hits the
+ * prepared statement cache of the connection).
+ */
+class SellerQuery {
+
+	private static final String SELECT = "SELECT seller.*,department.Name as DepName "
+			+ "FROM seller INNER JOIN department "
+			+ "ON seller.DepartmentId = department.Id ";
+
+	private static final String COUNT = "SELECT COUNT(*) "
+			+ "FROM seller INNER JOIN department "
+			+ "ON seller.DepartmentId = department.Id ";
+
+	private static final Map<String, String> SHAPES = new ConcurrentHashMap<>();
+
+	private final String sql;
+	private final List<Object> params = new ArrayList<>();
+
+	private SellerQuery(String sql) {
+		this.sql = sql;
+	}
+
+	String getSql() {
+		return sql;
+	}
+
+	static SellerQuery select(SellerCriteria criteria, Seller after, int pageSize) {
+		String shape = "S" + shapeOf(criteria) + (after != null ? "K" : "") + criteria.getSortColumn()
+				+ (criteria.isAscending() ? "A" : "D");
+		SellerQuery query = new SellerQuery(SHAPES.computeIfAbsent(shape, k -> buildSelect(criteria, after != null)));
+		query.addFilterParams(criteria);
+		if (after != null) {
+			if (criteria.getSortColumn() != SellerCriteria.SortColumn.ID) {
+				Object key = sortKey(criteria.getSortColumn(), after);
+				query.params.add(key);
+				query.params.add(key);
+			}
+			query.params.add(after.getId());
+		}
+		query.params.add(pageSize);
+		return query;
+	}
+
+	static SellerQuery count(SellerCriteria criteria) {
+		String shape = "C" + shapeOf(criteria);
+		SellerQuery query = new SellerQuery(SHAPES.computeIfAbsent(shape, k -> COUNT + where(criteria, false)));
+		query.addFilterParams(criteria);
+		return query;
+	}
+
+	void bind(PreparedStatement st) throws SQLException {
+		for (int i = 0; i < params.size(); i++) {
+			Object value = params.get(i);
+			if (value instanceof String)
+				st.setString(i + 1, (String) value);
+			else if (value instanceof Integer)
+				st.setInt(i + 1, (Integer) value);
+			else if (value instanceof Double)
+				st.setDouble(i + 1, (Double) value);
+			else if (value instanceof Date)
+				st.setDate(i + 1, new java.sql.Date(((Date) value).getTime()));
+			else
+				throw new IllegalStateException("Unexpected parameter type: " + value);
+		}
+	}
+
+	// which filters are in use, that's all the SQL text depends on
+	private static String shapeOf(SellerCriteria c) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(c.getNamePrefix() != null ? 'n' : '-');
+		sb.append(c.getEmailPrefix() != null ? 'e' : '-');
+		sb.append(c.getMinSalary() != null ? 's' : '-');
+		sb.append(c.getMaxSalary() != null ? 'S' : '-');
+		sb.append(c.getBirthDateFrom() != null ? 'b' : '-');
+		sb.append(c.getBirthDateTo() != null ? 'B' : '-');
+		sb.append(c.getDepartmentIds().size());
+		return sb.toString();
+	}
+
+	private void addFilterParams(SellerCriteria c) {
+		if (c.getNamePrefix() != null)
+			params.add(likePrefix(c.getNamePrefix()));
+		if (c.getEmailPrefix() != null)
+			params.add(likePrefix(c.getEmailPrefix()));
+		if (c.getMinSalary() != null)
+			params.add(c.getMinSalary());
+		if (c.getMaxSalary() != null)
+			params.add(c.getMaxSalary());
+		if (c.getBirthDateFrom() != null)
+			params.add(c.getBirthDateFrom());
+		if (c.getBirthDateTo() != null)
+			params.add(c.getBirthDateTo());
+		params.addAll(c.getDepartmentIds());
+	}
+
+	private static String buildSelect(SellerCriteria c, boolean keyset) {
+		String column = column(c.getSortColumn());
+		String direction = c.isAscending() ? "" : " DESC";
+		String greater = c.isAscending() ? " > ?" : " < ?";
+
+		StringBuilder sql = new StringBuilder(SELECT);
+		sql.append(where(c, keyset));
+		if (keyset) {
+			if (c.getSortColumn() == SellerCriteria.SortColumn.ID)
+				sql.append("seller.Id").append(greater).append(' ');
+			else
+				sql.append('(').append(column).append(greater).append(" OR (").append(column)
+						.append(" = ? AND seller.Id").append(greater).append(")) ");
+		}
+		sql.append("ORDER BY ");
+		if (c.getSortColumn() != SellerCriteria.SortColumn.ID)
+			sql.append(column).append(direction).append(", ");
+		sql.append("seller.Id").append(direction).append(" LIMIT ?");
+		return sql.toString();
+	}
+
+	// the WHERE clause, ending with "AND " when more conditions are to follow
+	private static String where(SellerCriteria c, boolean more) {
+		List<String> conditions = new ArrayList<>();
+		if (c.getNamePrefix() != null)
+			conditions.add("seller.Name LIKE ?");
+		if (c.getEmailPrefix() != null)
+			conditions.add("seller.Email LIKE ?");
+		if (c.getMinSalary() != null)
+			conditions.add("seller.BaseSalary >= ?");
+		if (c.getMaxSalary() != null)
+			conditions.add("seller.BaseSalary <= ?");
+		if (c.getBirthDateFrom() != null)
+			conditions.add("seller.BirthDate >= ?");
+		if (c.getBirthDateTo() != null)
+			conditions.add("seller.BirthDate <= ?");
+		int departments = c.getDepartmentIds().size();
+		if (departments > 0) {
+			StringBuilder in = new StringBuilder("seller.DepartmentId IN (?");
+			for (int i = 1; i < departments; i++)
+				in.append(", ?");
+			conditions.add(in.append(')').toString());
+		}
+		if (conditions.isEmpty())
+			return more ? "WHERE " : "";
+		return "WHERE " + String.join(" AND ", conditions) + (more ? " AND " : " ");
+	}
+
+	private static String column(SellerCriteria.SortColumn sortColumn) {
+		switch (sortColumn) {
+		case ID:
+			return "seller.Id";
+		case EMAIL:
+			return "seller.Email";
+		case BIRTH_DATE:
+			return "seller.BirthDate";
+		case BASE_SALARY:
+			return "seller.BaseSalary";
+		case DEPARTMENT:
+			return "department.Name";
+		default:
+			return "seller.Name";
+		}
+	}
+
+	private static Object sortKey(SellerCriteria.SortColumn sortColumn, Seller obj) {
+		switch (sortColumn) {
+		case EMAIL:
+			return obj.getEmail();
+		case BIRTH_DATE:
+			return obj.getBirthDate();
+		case BASE_SALARY:
+			return obj.getBaseSalary();
+		case DEPARTMENT:
+			return obj.getDepartment().getName();
+		default:
+			return obj.getName();
+		}
+	}
+
+	// prefix match, with the LIKE wildcards in the text itself escaped
+	private static String likePrefix(String prefix) {
+		return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+	}
+}
@@ -0,0 +1,80 @@
+package model.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+ * Maps rows of "SELECT seller.*, department.Name as DepName ..." to Sellers.
+ * Column indexes are looked up once per ResultSet instead of by label on
+ * every row. Every row becomes a new Seller, never one already handed out
+ * (those may be on screen, see SellerCache); with a cache it then becomes
+ * the current instance for its Id.
+ */
+class SellerRowMapper {
+
+	private final CachingDepartmentDao departments;
+	private final SellerCache cache;
+
+	private final int idColumn;
+	private final int nameColumn;
+	private final int emailColumn;
+	private final int birthDateColumn;
+	private final int baseSalaryColumn;
+	private final int departmentIdColumn;
+	private final int departmentNameColumn;
+
+	// departments already seen in this result set
+	private final Map<Integer, Department> seen = new HashMap<>();
+	private int lastDepartmentId = -1;
+	private Department lastDepartment;
+
+	SellerRowMapper(ResultSet rs, CachingDepartmentDao departments, SellerCache cache) throws SQLException {
+		this.departments = departments;
+		this.cache = cache;
+		// seller.* comes first, so Id and Name are the seller's columns
+		idColumn = rs.findColumn("Id");
+		nameColumn = rs.findColumn("Name");
+		emailColumn = rs.findColumn("Email");
+		birthDateColumn = rs.findColumn("BirthDate");
+		baseSalaryColumn = rs.findColumn("BaseSalary");
+		departmentIdColumn = rs.findColumn("DepartmentId");
+		departmentNameColumn = rs.findColumn("DepName");
+	}
+
+	Seller map(ResultSet rs) throws SQLException {
+		int id = rs.getInt(idColumn);
+		Seller obj = new Seller();
+		obj.setId(id);
+		obj.setName(rs.getString(nameColumn));
+		obj.setEmail(rs.getString(emailColumn));
+		obj.setBaseSalary(rs.getDouble(baseSalaryColumn));
+
+		// BirthDate is a DATE, no need to go through a Timestamp
+		java.sql.Date birthDate = rs.getDate(birthDateColumn);
+		if (birthDate != null)
+			//so it uses Date.util and not Date.sql
+			obj.setBirthDate(new java.util.Date(birthDate.getTime()));
+
+		obj.setDepartment(department(rs));
+		return cache == null ? obj : cache.merge(obj);
+	}
+
+	private Department department(ResultSet rs) throws SQLException {
+		int depId = rs.getInt(departmentIdColumn);
+		if (depId == lastDepartmentId)
+			return lastDepartment;
+		Department dep = seen.get(depId);
+		if (dep == null) {
+			dep = departments.canonicalize(depId, rs.getString(departmentNameColumn));
+			seen.put(depId, dep);
+		}
+		lastDepartmentId = depId;
+		lastDepartment = dep;
+		return dep;
+	}
+}
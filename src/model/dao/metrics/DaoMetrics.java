@@ -0,0 +1,148 @@
+package model.dao.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Per-operation metrics for the DAOs. wrap() puts a proxy in front of a DAO
+ * that times every call of its interface and records it in the operation's
+ * OperationStats: calls, errors, rows returned and a latency histogram.
+ * Every OperationStats is also published as a JMX MBean, named
+ * model.dao:type=DaoMetrics,dao=<interface>,operation=<method>, and can be
+ * appended to a file on an interval.
+ */
+public class DaoMetrics {
+
+	private static final Map<String, OperationStats> stats = new ConcurrentHashMap<>();
+	private static ScheduledExecutorService dumper;
+
+	@SuppressWarnings("unchecked")
+	public static <T> T wrap(Class<T> daoInterface, T dao) {
+		return (T) Proxy.newProxyInstance(daoInterface.getClassLoader(), new Class<?>[] { daoInterface },
+				new Handler(daoInterface.getSimpleName(), dao));
+	}
+
+	public static OperationStats get(String dao, String operation) {
+		return stats.computeIfAbsent(dao + "." + operation, k -> register(new OperationStats(dao, operation)));
+	}
+
+	public static Collection<OperationStats> getAll() {
+		List<OperationStats> list = new ArrayList<>(stats.values());
+		list.sort((a, b) -> (a.getDao() + "." + a.getOperation()).compareTo(b.getDao() + "." + b.getOperation()));
+		return list;
+	}
+
+	private static OperationStats register(OperationStats obj) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("model.dao:type=DaoMetrics,dao=" + obj.getDao() + ",operation="
+					+ obj.getOperation());
+			if (!server.isRegistered(name))
+				server.registerMBean(obj, name);
+		} catch (JMException e) {
+			// metrics still work without JMX
+			System.err.println("Could not register DAO metrics MBean: " + e.getMessage());
+		}
+		return obj;
+	}
+
+	// appends a snapshot of every operation to the file every intervalMillis
+	public static synchronized void startDump(Path file, long intervalMillis) {
+		if (dumper != null || intervalMillis <= 0)
+			return;
+		dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "dao-metrics-dump");
+			t.setDaemon(true);
+			return t;
+		});
+		dumper.scheduleAtFixedRate(() -> dump(file), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public static synchronized void stopDump() {
+		if (dumper != null) {
+			dumper.shutdownNow();
+			dumper = null;
+		}
+	}
+
+	public static void dump(Path file) {
+		boolean header = !Files.exists(file);
+		String now = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+			if (header)
+				out.println("time,dao,operation,count,errors,rows,mean_ms,p50_ms,p95_ms,p99_ms,max_ms");
+			for (OperationStats s : getAll()) {
+				out.println(String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f", now, s.getDao(),
+						s.getOperation(), s.getCount(), s.getErrors(), s.getRows(), s.getMeanMillis(),
+						s.getP50Millis(), s.getP95Millis(), s.getP99Millis(), s.getMaxMillis()));
+			}
+		} catch (IOException e) {
+			System.err.println("Could not write DAO metrics to " + file + ": " + e.getMessage());
+		}
+	}
+
+	private static class Handler implements InvocationHandler {
+
+		private final String daoName;
+		private final Object target;
+		// looked up once per method instead of on every call
+		private final Map<Method, OperationStats> byMethod = new ConcurrentHashMap<>();
+
+		Handler(String daoName, Object target) {
+			this.daoName = daoName;
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class)
+				return method.invoke(target, args);
+
+			OperationStats op = byMethod.computeIfAbsent(method, m -> get(daoName, m.getName()));
+			long start = System.nanoTime();
+			Object result;
+			try {
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				op.record(System.nanoTime() - start, true);
+				throw e.getCause();
+			}
+			op.record(System.nanoTime() - start, false);
+
+			if (result instanceof Collection)
+				op.addRows(((Collection<?>) result).size());
+			else if (result instanceof Stream)
+				// rows arrive while the caller reads them
+				return ((Stream<?>) result).peek(obj -> op.addRows(1));
+			else if (result != null && !(result instanceof Number))
+				op.addRows(1);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package model.dao.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters and latency histogram of one DAO operation. Recording is a few
+ * atomic adds, no locks, so it can stay on all the time.
+ *
+ * The histogram has 4 buckets per power of two of nanoseconds, so a
+ * percentile is off by at most 1/4 of its value, which is plenty to see
+ * which query got slow.
+ */
+public class OperationStats implements OperationStatsMBean {
+
+	private static final int SUB_BUCKETS = 4;
+	private static final int SUB_BITS = 2;
+	// up to 2^42 ns, a bit over an hour
+	private static final int MAX_EXPONENT = 42;
+
+	private final String dao;
+	private final String operation;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_BUCKETS);
+
+	public OperationStats(String dao, String operation) {
+		this.dao = dao;
+		this.operation = operation;
+	}
+
+	public void record(long nanos, boolean error) {
+		count.increment();
+		if (error)
+			errors.increment();
+		totalNanos.add(nanos);
+		buckets.incrementAndGet(bucket(nanos));
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+			max = maxNanos.get();
+	}
+
+	public void addRows(long n) {
+		rows.add(n);
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) Math.max(nanos, 0);
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT)
+			return (MAX_EXPONENT + 1) * SUB_BUCKETS - 1;
+		// the bits right after the leading one pick the sub bucket
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return exponent * SUB_BUCKETS + sub;
+	}
+
+	// largest value that falls in the bucket
+	private static long upperBound(int bucket) {
+		int exponent = bucket / SUB_BUCKETS;
+		int sub = bucket % SUB_BUCKETS;
+		if (exponent < SUB_BITS)
+			return bucket;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	public long percentileNanos(double percentile) {
+		long[] snapshot = new long[buckets.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100.0 * total);
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(upperBound(i), maxNanos.get());
+		}
+		return maxNanos.get();
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	@Override
+	public String getDao() {
+		return dao;
+	}
+
+	@Override
+	public String getOperation() {
+		return operation;
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public long getRows() {
+		return rows.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long n = count.sum();
+		return n == 0 ? 0.0 : millis(totalNanos.sum()) / n;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return millis(percentileNanos(50));
+	}
+
+	@Override
+	public double getP95Millis() {
+		return millis(percentileNanos(95));
+	}
+
+	@Override
+	public double getP99Millis() {
+		return millis(percentileNanos(99));
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return millis(maxNanos.get());
+	}
+
+	@Override
+	public void reset() {
+		count.reset();
+		errors.reset();
+		rows.reset();
+		totalNanos.reset();
+		maxNanos.set(0);
+		for (int i = 0; i < buckets.length(); i++)
+			buckets.set(i, 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s.%s [count=%d, errors=%d, rows=%d, mean=%.3fms, p50=%.3fms, p95=%.3fms, p99=%.3fms, max=%.3fms]",
+				dao, operation, getCount(), getErrors(), getRows(), getMeanMillis(), getP50Millis(), getP95Millis(),
+				getP99Millis(), getMaxMillis());
+	}
+}
@@ -0,0 +1,27 @@
+package model.dao.metrics;
+
+// what JMX shows for each DAO operation, times in milliseconds
+public interface OperationStatsMBean {
+
+	String getDao();
+
+	String getOperation();
+
+	long getCount();
+
+	long getErrors();
+
+	long getRows();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP95Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
@@ -0,0 +1,66 @@
+package model.entities;
+
+import java.io.Serializable;
+
+// one row of the changelog table, see sql/changelog.sql
+public class ChangeLogEntry implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Operation {
+		INSERT, UPDATE, DELETE;
+
+		public static Operation fromCode(String code) {
+			switch (code) {
+			case "I":
+				return INSERT;
+			case "U":
+				return UPDATE;
+			case "D":
+				return DELETE;
+			default:
+				throw new IllegalArgumentException("Unknown changelog operation: " + code);
+			}
+		}
+	}
+
+	private long seq;
+	private String tableName;
+	private Integer rowId;
+	private Operation operation;
+	private String clientId;
+
+	public ChangeLogEntry(long seq, String tableName, Integer rowId, Operation operation, String clientId) {
+		this.seq = seq;
+		this.tableName = tableName;
+		this.rowId = rowId;
+		this.operation = operation;
+		this.clientId = clientId;
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public Integer getRowId() {
+		return rowId;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeLogEntry [seq=" + seq + ", tableName=" + tableName + ", rowId=" + rowId + ", operation="
+				+ operation + ", clientId=" + clientId + "]";
+	}
+}
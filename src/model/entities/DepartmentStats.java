@@ -0,0 +1,104 @@
+package model.entities;
+
+import java.io.Serializable;
+
+/*
+ * Headcount, salary figures and age distribution of one department, as
+ * computed by the database. Departments without sellers have a headcount
+ * of 0 and null salary figures.
+ */
+public class DepartmentStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// upper age limits of the age groups, the last group has no limit
+	public static final int[] AGE_LIMITS = { 25, 35, 45, 55 };
+
+	private Department department;
+	private int headcount;
+	private Double totalSalary;
+	private Double avgSalary;
+	private Double minSalary;
+	private Double maxSalary;
+	// sellers per age group, AGE_LIMITS.length + 1 of them
+	private int[] ageGroups = new int[AGE_LIMITS.length + 1];
+
+	public DepartmentStats() {
+	}
+
+	public DepartmentStats(Department department) {
+		this.department = department;
+	}
+
+	public Department getDepartment() {
+		return department;
+	}
+
+	public void setDepartment(Department department) {
+		this.department = department;
+	}
+
+	public int getHeadcount() {
+		return headcount;
+	}
+
+	public void setHeadcount(int headcount) {
+		this.headcount = headcount;
+	}
+
+	public Double getTotalSalary() {
+		return totalSalary;
+	}
+
+	public void setTotalSalary(Double totalSalary) {
+		this.totalSalary = totalSalary;
+	}
+
+	public Double getAvgSalary() {
+		return avgSalary;
+	}
+
+	public void setAvgSalary(Double avgSalary) {
+		this.avgSalary = avgSalary;
+	}
+
+	public Double getMinSalary() {
+		return minSalary;
+	}
+
+	public void setMinSalary(Double minSalary) {
+		this.minSalary = minSalary;
+	}
+
+	public Double getMaxSalary() {
+		return maxSalary;
+	}
+
+	public void setMaxSalary(Double maxSalary) {
+		this.maxSalary = maxSalary;
+	}
+
+	public int getAgeGroup(int index) {
+		return ageGroups[index];
+	}
+
+	public void setAgeGroup(int index, int count) {
+		ageGroups[index] = count;
+	}
+
+	// "<25", "25-34", ..., "55+"
+	public static String ageGroupLabel(int index) {
+		if (index == 0)
+			return "<" + AGE_LIMITS[0];
+		if (index == AGE_LIMITS.length)
+			return AGE_LIMITS[index - 1] + "+";
+		return AGE_LIMITS[index - 1] + "-" + (AGE_LIMITS[index] - 1);
+	}
+
+	@Override
+	public String toString() {
+		return "DepartmentStats [department=" + department + ", headcount=" + headcount + ", totalSalary="
+				+ totalSalary + ", avgSalary=" + avgSalary + ", minSalary=" + minSalary + ", maxSalary=" + maxSalary
+				+ "]";
+	}
+}
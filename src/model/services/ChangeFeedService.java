@@ -0,0 +1,374 @@
+package model.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import db.DB;
+import db.DbException;
+import gui.listeners.DataChangeEvent;
+import gui.listeners.DataChangeListener;
+import model.dao.ChangeLogDao;
+import model.dao.DaoFactory;
+import model.dao.SellerDao;
+import model.dao.impl.CachingDepartmentDao;
+import model.dao.impl.SellerCache;
+import model.entities.ChangeLogEntry;
+import model.entities.ChangeLogEntry.Operation;
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+ * Picks up the seller and department changes other clients make, from the
+ * changelog table (sql/changelog.sql). A background thread polls for the
+ * entries after the last Seq applied, re-reads only the rows they name,
+ * updates the caches and hands DataChangeEvents to the subscribed views,
+ * so an open list refreshes a few rows instead of reloading everything.
+ *
+ * Seqs are handed out when a transaction inserts into the log, but it may
+ * commit after a later one, so a Seq skipped over is kept as a gap and
+ * asked for again on the next polls, until changefeed.gapTimeoutMs passes
+ * (a rolled back transaction leaves a gap for good).
+ */
+public class ChangeFeedService {
+
+	// how many missing Seqs are kept to be asked for again
+	private static final int MAX_GAPS = 1000;
+
+	private static class Subscription<T> {
+		final DataChangeListener<T> listener;
+		final Executor executor;
+
+		Subscription(DataChangeListener<T> listener, Executor executor) {
+			this.listener = listener;
+			this.executor = executor;
+		}
+	}
+
+	private static final List<Subscription<Seller>> sellerListeners = new CopyOnWriteArrayList<>();
+	private static final List<Subscription<Department>> departmentListeners = new CopyOnWriteArrayList<>();
+
+	private static ScheduledExecutorService poller = null;
+
+	// only touched by the poller thread
+	private static ChangeLogDao dao;
+	private static SellerDao sellerDao;
+	private static volatile long lastSeq = -1;
+	// missing Seq -> when it was first missed
+	private static final Map<Long, Long> gaps = new TreeMap<>();
+	private static int batchSize;
+	private static int reloadThreshold;
+	private static long gapTimeoutMillis;
+	private static boolean failing;
+
+	// polls every changefeed.pollIntervalMs unless changefeed.enabled=false
+	public static synchronized void start() {
+		if (poller != null || !Boolean.parseBoolean(DB.getProperty("changefeed.enabled", "true")))
+			return;
+		long interval = DB.getIntProperty("changefeed.pollIntervalMs", 2000);
+		if (interval <= 0)
+			return;
+		batchSize = Math.max(1, DB.getIntProperty("changefeed.batchSize", 1000));
+		reloadThreshold = Math.max(1, DB.getIntProperty("changefeed.reloadThreshold", 500));
+		gapTimeoutMillis = DB.getIntProperty("changefeed.gapTimeoutMs", 10000);
+		poller = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "change-feed");
+			t.setDaemon(true);
+			return t;
+		});
+		poller.scheduleWithFixedDelay(ChangeFeedService::poll, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	// same, going on from a Seq read earlier (see readLastSeq)
+	public static synchronized void start(long fromSeq) {
+		if (poller == null && fromSeq >= 0)
+			lastSeq = fromSeq;
+		start();
+	}
+
+	// current end of the change log, -1 when there is none (sql/changelog.sql not
+	// run) or it can't be read; starting from -1 reads it again first thing
+	public static long readLastSeq() {
+		try {
+			return DaoFactory.createChangeLogDao().findLastSeq();
+		} catch (DbException e) {
+			return -1;
+		}
+	}
+
+	public static synchronized void stop() {
+		if (poller != null) {
+			poller.shutdownNow();
+			poller = null;
+		}
+	}
+
+	public static synchronized boolean isRunning() {
+		return poller != null;
+	}
+
+	// listener is called through executor (e.g. the FX thread); adding it twice does nothing
+	public static void addSellerListener(DataChangeListener<Seller> listener, Executor executor) {
+		add(sellerListeners, listener, executor);
+	}
+
+	public static void removeSellerListener(DataChangeListener<Seller> listener) {
+		sellerListeners.removeIf(s -> s.listener == listener);
+	}
+
+	public static void addDepartmentListener(DataChangeListener<Department> listener, Executor executor) {
+		add(departmentListeners, listener, executor);
+	}
+
+	public static void removeDepartmentListener(DataChangeListener<Department> listener) {
+		departmentListeners.removeIf(s -> s.listener == listener);
+	}
+
+	private static synchronized <T> void add(List<Subscription<T>> list, DataChangeListener<T> listener,
+			Executor executor) {
+		for (Subscription<T> s : list) {
+			if (s.listener == listener)
+				return;
+		}
+		list.add(new Subscription<>(listener, executor));
+	}
+
+	private static void poll() {
+		try {
+			if (dao == null) {
+				dao = DaoFactory.createChangeLogDao();
+				sellerDao = DaoFactory.createSellerDao();
+			}
+			if (lastSeq < 0) {
+				// what happened before this client started is in the data it loads anyway
+				long seq = dao.findLastSeq();
+				if (seq < 0) {
+					// no point asking again every poll until someone creates the table
+					System.err.println("Change feed: no changelog table (run sql/changelog.sql), not polling");
+					stop();
+					return;
+				}
+				lastSeq = seq;
+				return;
+			}
+			List<ChangeLogEntry> entries = read();
+			if (entries != null)
+				apply(entries);
+			else
+				invalidateAll();
+			if (failing) {
+				System.err.println("Change feed: reading the change log again");
+				failing = false;
+			}
+		} catch (RuntimeException e) {
+			// the database may be away for a while, keep trying but say it only once
+			if (!failing)
+				System.err.println("Change feed: " + e.getMessage());
+			failing = true;
+		}
+	}
+
+	// new entries in Seq order, or null when there are too many to apply one by one
+	private static List<ChangeLogEntry> read() {
+		List<ChangeLogEntry> entries = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		if (!gaps.isEmpty()) {
+			gaps.values().removeIf(since -> now - since > gapTimeoutMillis);
+			for (ChangeLogEntry entry : dao.findBySeqs(new ArrayList<>(gaps.keySet()))) {
+				gaps.remove(entry.getSeq());
+				entries.add(entry);
+			}
+		}
+		List<ChangeLogEntry> batch;
+		do {
+			batch = dao.findAfter(lastSeq, batchSize);
+			for (ChangeLogEntry entry : batch) {
+				if (entry.getSeq() - lastSeq - 1 <= MAX_GAPS) {
+					for (long seq = lastSeq + 1; seq < entry.getSeq() && gaps.size() < MAX_GAPS; seq++)
+						gaps.put(seq, now);
+				}
+				lastSeq = entry.getSeq();
+				entries.add(entry);
+			}
+			if (entries.size() > reloadThreshold) {
+				// skip the rest, everything gets reloaded
+				lastSeq = Math.max(lastSeq, dao.findLastSeq());
+				gaps.clear();
+				return null;
+			}
+		} while (batch.size() == batchSize);
+		return entries;
+	}
+
+	private static void apply(List<ChangeLogEntry> entries) {
+		String self = DB.getClientId();
+		// last operation per row, an insert followed by updates stays an insert
+		Map<Integer, Operation> sellerOps = new LinkedHashMap<>();
+		Map<Integer, Operation> departmentOps = new LinkedHashMap<>();
+		for (ChangeLogEntry entry : entries) {
+			if (self.equals(entry.getClientId()))
+				continue; // already applied when it was made
+			Map<Integer, Operation> ops = "seller".equalsIgnoreCase(entry.getTableName()) ? sellerOps
+					: "department".equalsIgnoreCase(entry.getTableName()) ? departmentOps : null;
+			if (ops != null)
+				ops.merge(entry.getRowId(), entry.getOperation(),
+						(before, after) -> before == Operation.INSERT && after == Operation.UPDATE ? before : after);
+		}
+		if (sellerOps.isEmpty() && departmentOps.isEmpty())
+			return;
+		ReportService.invalidate();
+		dispatch(departmentListeners, departmentEvents(departmentOps));
+		dispatch(sellerListeners, sellerEvents(sellerDao, sellerOps));
+	}
+
+	private static List<DataChangeEvent<Department>> departmentEvents(Map<Integer, Operation> ops) {
+		CachingDepartmentDao departments = DaoFactory.getDepartmentCache();
+		List<DataChangeEvent<Department>> events = new ArrayList<>();
+		for (Map.Entry<Integer, Operation> op : ops.entrySet()) {
+			Department obj = op.getValue() == Operation.DELETE ? null : departments.refresh(op.getKey());
+			if (obj == null) {
+				departments.invalidate(op.getKey());
+				events.add(new DataChangeEvent<>(new Department(op.getKey(), null), DataChangeEvent.Type.REMOVED));
+			}
+			else {
+				events.add(new DataChangeEvent<>(obj, op.getValue() == Operation.INSERT ? DataChangeEvent.Type.INSERTED
+						: DataChangeEvent.Type.UPDATED));
+			}
+		}
+		return events;
+	}
+
+	private static List<DataChangeEvent<Seller>> sellerEvents(SellerDao sellerDao, Map<Integer, Operation> ops) {
+		SellerCache cache = DaoFactory.getSellerCache();
+		List<Integer> toRead = new ArrayList<>();
+		List<Integer> removed = new ArrayList<>();
+		for (Map.Entry<Integer, Operation> op : ops.entrySet()) {
+			if (op.getValue() == Operation.DELETE)
+				removed.add(op.getKey());
+			else
+				toRead.add(op.getKey());
+		}
+		// one query for all of them, the new rows replace the cached instances
+		List<Seller> changed = sellerDao.findByIds(toRead);
+		Map<Integer, Seller> found = new HashMap<>();
+		for (Seller obj : changed)
+			found.put(obj.getId(), obj);
+		for (Integer id : toRead) {
+			if (!found.containsKey(id))
+				removed.add(id); // deleted again in the meantime
+		}
+
+		List<DataChangeEvent<Seller>> events = new ArrayList<>();
+		boolean countChanged = !removed.isEmpty();
+		for (Seller obj : changed) {
+			boolean inserted = ops.get(obj.getId()) == Operation.INSERT;
+			countChanged |= inserted;
+			events.add(new DataChangeEvent<>(obj, inserted ? DataChangeEvent.Type.INSERTED : DataChangeEvent.Type.UPDATED));
+		}
+		for (Integer id : removed) {
+			// the last known data, if any, tells the views whether it was on screen
+			Seller obj = cache.peek(id);
+			if (obj == null) {
+				obj = new Seller();
+				obj.setId(id);
+			}
+			cache.evict(id);
+			events.add(new DataChangeEvent<>(obj, DataChangeEvent.Type.REMOVED));
+		}
+		SellerService.applyRemoteChanges(changed, removed, countChanged);
+		return events;
+	}
+
+	/*
+	 * Rows whose state in memory may not be the stored one (a save
+	 * write-behind gave up on): read again and sent to the views like a
+	 * change from another client. If they can't be read the views reload.
+	 */
+	static void restoreSellers(List<Integer> ids) {
+		if (ids.isEmpty())
+			return;
+		SellerCache cache = DaoFactory.getSellerCache();
+		Map<Integer, Operation> ops = new LinkedHashMap<>();
+		for (Integer id : ids) {
+			cache.evict(id);
+			ops.put(id, Operation.UPDATE);
+		}
+		try {
+			List<DataChangeEvent<Seller>> events = sellerEvents(DaoFactory.createSellerDao(), ops);
+			ReportService.invalidate();
+			dispatch(sellerListeners, events);
+		} catch (RuntimeException e) {
+			invalidateAll();
+		}
+	}
+
+	static void restoreDepartments(List<Integer> ids) {
+		if (ids.isEmpty())
+			return;
+		Map<Integer, Operation> ops = new LinkedHashMap<>();
+		for (Integer id : ids)
+			ops.put(id, Operation.UPDATE);
+		try {
+			List<DataChangeEvent<Department>> events = departmentEvents(ops);
+			ReportService.invalidate();
+			dispatch(departmentListeners, events);
+		} catch (RuntimeException e) {
+			CachingDepartmentDao departments = DaoFactory.getDepartmentCache();
+			for (Integer id : ids)
+				departments.invalidate(id);
+			invalidateAll();
+		}
+	}
+
+	// everything may have changed: caches dropped, views reload
+	static void invalidateAll() {
+		DaoFactory.getDepartmentCache().invalidateAll();
+		SellerService.invalidateCaches();
+		ReportService.invalidate();
+		dispatch(departmentListeners, invalidated());
+		dispatch(sellerListeners, invalidated());
+	}
+
+	// changes found some other way (e.g. SnapshotService), sent to the same listeners
+	static void publish(List<DataChangeEvent<Department>> departments, List<DataChangeEvent<Seller>> sellers) {
+		int threshold = DB.getIntProperty("changefeed.reloadThreshold", 500);
+		if (departments.size() + sellers.size() > threshold) {
+			dispatch(departmentListeners, invalidated());
+			dispatch(sellerListeners, invalidated());
+			return;
+		}
+		dispatch(departmentListeners, departments);
+		dispatch(sellerListeners, sellers);
+	}
+
+	private static <T> List<DataChangeEvent<T>> invalidated() {
+		List<DataChangeEvent<T>> events = new ArrayList<>();
+		events.add(new DataChangeEvent<>(null, DataChangeEvent.Type.INVALIDATED));
+		return events;
+	}
+
+	// one task per listener with all the events, not one per event
+	private static <T> void dispatch(List<Subscription<T>> subscriptions, List<DataChangeEvent<T>> events) {
+		if (events.isEmpty())
+			return;
+		for (Subscription<T> s : subscriptions) {
+			s.executor.execute(() -> {
+				for (DataChangeEvent<T> event : events)
+					s.listener.onDataChanged(event);
+			});
+		}
+	}
+
+	// last Seq read from the change log, -1 before the first poll
+	public static long getLastSeq() {
+		return lastSeq;
+	}
+}
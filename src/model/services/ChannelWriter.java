@@ -0,0 +1,146 @@
+package model.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Buffered writes of primitives and strings to a FileChannel, optionally
+ * gzip compressed. Everything goes through one fixed buffer, so the memory
+ * used doesn't depend on how much is written. Numbers are big-endian.
+ * Optionally keeps a CRC32 of everything written so far.
+ */
+class ChannelWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel file;
+	private final WritableByteChannel out;
+	private final ByteBuffer buffer;
+	private final CRC32 crc;
+
+	ChannelWriter(Path path, boolean gzip) throws IOException {
+		this(path, gzip, false);
+	}
+
+	ChannelWriter(Path path, boolean gzip, boolean checksum) throws IOException {
+		crc = checksum ? new CRC32() : null;
+		file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		if (gzip) {
+			OutputStream gz = new GZIPOutputStream(Channels.newOutputStream(file), BUFFER_SIZE);
+			out = Channels.newChannel(gz);
+			// copied into the stream's array anyway
+			buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+		else {
+			out = file;
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+
+	void putByte(int value) throws IOException {
+		ensure(1);
+		buffer.put((byte) value);
+	}
+
+	void putInt(int value) throws IOException {
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	void putLong(long value) throws IOException {
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	void putDouble(double value) throws IOException {
+		ensure(8);
+		buffer.putDouble(value);
+	}
+
+	void putBytes(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining())
+				flush();
+			int n = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, n);
+			offset += n;
+		}
+	}
+
+	// length in bytes then UTF-8, -1 for null
+	void putString(String value) throws IOException {
+		if (value == null) {
+			putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		putInt(bytes.length);
+		putBytes(bytes);
+	}
+
+	// text as is, for the CSV
+	void putText(CharSequence text) throws IOException {
+		putBytes(text.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	// CRC32 of the bytes written so far (before compression)
+	int checksum() throws IOException {
+		flush();
+		return (int) crc.getValue();
+	}
+
+	void flush() throws IOException {
+		buffer.flip();
+		if (crc != null)
+			crc.update(buffer.duplicate());
+		while (buffer.hasRemaining())
+			out.write(buffer);
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			// closes the gzip stream (writing its trailer) and the file under it
+			out.close();
+			file.close();
+		}
+	}
+
+	// files are written under this name, then published
+	static Path tempFile(Path file) {
+		return file.resolveSibling(file.getFileName() + ".part");
+	}
+
+	// puts the finished file in place in one step where the file system allows it
+	static void publish(Path tmp, Path file) throws IOException {
+		try {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
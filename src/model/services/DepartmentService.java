@@ -1,6 +1,8 @@
 package model.services;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import model.dao.DaoFactory;
 import model.dao.DepartmentDao;
@@ -8,20 +10,108 @@ import model.entities.Department;
 
 public class DepartmentService {
 	
+	// saves waiting to be written in batches, only with writeBehind.enabled=true
+	private static volatile WriteBehindQueue<Department> writeBehind;
+	
 	private DepartmentDao dao = DaoFactory.createDepartmentDao();
 	
+	private static synchronized WriteBehindQueue<Department> writeBehind() {
+		if (writeBehind == null)
+			writeBehind = WriteBehindQueue.create("department", new DepartmentService()::saveOrUpdateAll,
+					Department::getId, lost -> ChangeFeedService.restoreDepartments(ids(lost)));
+		return writeBehind;
+	}
+	
+	// Ids of the rows that exist, new ones never made it to the database
+	private static List<Integer> ids(List<Department> list) {
+		List<Integer> ids = new ArrayList<>(list.size());
+		for (Department obj : list) {
+			if (obj.getId() != null)
+				ids.add(obj.getId());
+		}
+		return ids;
+	}
+	
+	private static void discardPending(Integer id) {
+		WriteBehindQueue<Department> queue = writeBehind;
+		if (queue != null && id != null)
+			queue.discard(id);
+	}
+	
 	public List<Department> findAll(){
+		// reads see the saves still waiting in the queue
+		WriteBehindQueue<Department> queue = writeBehind;
+		if (queue != null && queue.size() > 0 && !UnitOfWork.isActive())
+			queue.flush();
 		return dao.findAll();
 	}
 
 	public void saveOrUpdate(Department obj) {
+		// written now, an older edit still waiting would undo it
+		discardPending(obj.getId());
 		if(obj.getId()==null)
 			dao.insert(obj);
 		else
 			dao.update(obj);
+		ReportService.invalidate();
 	}
 	
 	public void remove(Department obj) {
+		discardPending(obj.getId());
 		dao.deleteById(obj.getId());
+		ReportService.invalidate();
+	}
+	
+	public void saveOrUpdateAll(List<Department> list) {
+		List<Department> toInsert = new ArrayList<>();
+		List<Department> toUpdate = new ArrayList<>();
+		for (Department obj : list) {
+			if (obj.getId() == null)
+				toInsert.add(obj);
+			else
+				toUpdate.add(obj);
+		}
+		// a commit per batch.size rows; inside a unit of work it all commits
+		// with the unit, and if that rolls back the new rows don't exist after all
+		UnitOfWork.afterRollback(() -> toInsert.forEach(obj -> obj.setId(null)));
+		dao.insertAll(toInsert);
+		dao.updateAll(toUpdate);
+		ReportService.invalidate();
+	}
+	
+	public void removeAll(List<Department> list) {
+		List<Integer> ids = new ArrayList<>();
+		for (Department obj : list) {
+			ids.add(obj.getId());
+			discardPending(obj.getId());
+		}
+		dao.deleteByIds(ids);
+		ReportService.invalidate();
+	}
+	
+	// async variants, run on the ServiceExecutor instead of the calling thread
+	
+	public CompletableFuture<List<Department>> findAllAsync() {
+		return ServiceExecutor.supply(this::findAll);
+	}
+	
+	public CompletableFuture<Void> saveOrUpdateAsync(Department obj) {
+		return ServiceExecutor.run(() -> saveOrUpdate(obj));
+	}
+	
+	public boolean isWriteBehind() {
+		return WriteBehindQueue.isEnabled();
+	}
+	
+	// queued with write-behind on (saveOrUpdateAsync otherwise), the future
+	// completes once the department is in the database and has its Id
+	public CompletableFuture<Department> saveOrUpdateLater(Department obj) {
+		if (!isWriteBehind())
+			return saveOrUpdateAsync(obj).thenApply(v -> obj);
+		return writeBehind().enqueue(obj);
+	}
+	
+	public CompletableFuture<Void> removeAsync(Department obj) {
+		return ServiceExecutor.run(() -> remove(obj));
 	}
 }
@@ -0,0 +1,363 @@
+package model.services;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import model.dao.SellerCriteria;
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+ * Departments and sellers as they were at some point, kept in a local file
+ * so the lists can be shown before (or without) the database. The sellers
+ * stay in the file, memory-mapped, and are decoded when a query gets to
+ * them; the only per-row memory is an index of Id and position, 8 bytes a
+ * row. Queries follow the same SellerCriteria rules as the database ones:
+ * matches() for the filters, comparator() for the order, keyset paging
+ * after a row. Each one walks the file, fine for a cold start or while the
+ * database is away, which is all this is for.
+ *
+ * File layout, big-endian:
+ *   "SLSN", int format version, long written at (epoch ms), long change
+ *   log Seq at the time (-1 if unknown), string database url
+ *   int department count, then per department int Id, string Name
+ *   per seller int Id, string Name, string Email, long BirthDate (epoch
+ *   ms, Long.MIN_VALUE if null), double BaseSalary (NaN if null), int
+ *   DepartmentId; then int -1 (Ids are never negative), int seller count
+ *   int CRC32 of everything before it
+ * A string is an int byte length (-1 for null) and UTF-8 bytes. A file
+ * with another magic, version or url, or a wrong CRC, is not used.
+ */
+class LocalSnapshot {
+
+	static final int FORMAT_VERSION = 2;
+	private static final byte[] MAGIC = { 'S', 'L', 'S', 'N' };
+	private static final int END = -1;
+
+	private final long writtenAt;
+	private final long changeSeq;
+	private final List<Department> departments;
+	private final Map<Integer, Department> departmentById;
+	// read-only mapping, every read goes through a duplicate
+	private final ByteBuffer buffer;
+	private final int sellersAt;
+	// Id << 32 | position per seller, sorted, so in Id order
+	private final long[] index;
+	// the instance to hand out for a row read from the file (the identity map's)
+	private final UnaryOperator<Seller> canonical;
+
+	private LocalSnapshot(long writtenAt, long changeSeq, List<Department> departments,
+			Map<Integer, Department> departmentById, ByteBuffer buffer, int sellersAt, long[] index,
+			UnaryOperator<Seller> canonical) {
+		this.writtenAt = writtenAt;
+		this.changeSeq = changeSeq;
+		this.departments = departments;
+		this.departmentById = departmentById;
+		this.buffer = buffer;
+		this.sellersAt = sellersAt;
+		this.index = index;
+		this.canonical = canonical;
+	}
+
+	long getWrittenAt() {
+		return writtenAt;
+	}
+
+	long getChangeSeq() {
+		return changeSeq;
+	}
+
+	List<Department> getDepartments() {
+		return departments;
+	}
+
+	int size() {
+		return index.length;
+	}
+
+	// position of id in the index, -1 if it isn't in the snapshot
+	int indexOf(int id) {
+		// the first entry at or after (id, position 0)
+		int i = Arrays.binarySearch(index, (long) id << 32);
+		if (i < 0)
+			i = -i - 1;
+		return i < index.length && (int) (index[i] >>> 32) == id ? i : -1;
+	}
+
+	int idAt(int i) {
+		return (int) (index[i] >>> 32);
+	}
+
+	// the row as stored, not the shared instance
+	Seller storedAt(int i) {
+		ByteBuffer in = buffer.duplicate();
+		in.position((int) index[i]);
+		return next(in);
+	}
+
+	Seller findById(Integer id) {
+		int i = id == null ? -1 : indexOf(id);
+		return i < 0 ? null : canonical.apply(storedAt(i));
+	}
+
+	// same rows and order the database would give for these criteria
+	List<Seller> findByCriteria(SellerCriteria criteria, Seller after, int pageSize) {
+		Comparator<Seller> order = criteria.comparator();
+		// the first pageSize rows so far, the last of them on top
+		PriorityQueue<Seller> page = new PriorityQueue<>(Math.max(1, Math.min(pageSize, 1024)), order.reversed());
+		ByteBuffer in = records();
+		for (Seller obj = next(in); obj != null; obj = next(in)) {
+			if (!criteria.matches(obj) || (after != null && order.compare(obj, after) <= 0))
+				continue;
+			if (page.size() < pageSize)
+				page.add(obj);
+			else if (order.compare(obj, page.peek()) < 0) {
+				page.poll();
+				page.add(obj);
+			}
+		}
+		List<Seller> list = new ArrayList<>(page);
+		list.sort(order);
+		list.replaceAll(canonical);
+		return list;
+	}
+
+	int count(SellerCriteria criteria) {
+		if (!criteria.hasFilters())
+			return index.length;
+		int count = 0;
+		ByteBuffer in = records();
+		for (Seller obj = next(in); obj != null; obj = next(in)) {
+			if (criteria.matches(obj))
+				count++;
+		}
+		return count;
+	}
+
+	// every row as stored, in file order
+	Stream<Seller> stream() {
+		ByteBuffer in = records();
+		return Stream.iterate(next(in), Objects::nonNull, obj -> next(in));
+	}
+
+	private ByteBuffer records() {
+		ByteBuffer in = buffer.duplicate();
+		in.position(sellersAt);
+		return in;
+	}
+
+	// the seller at in's position, null at the end; the file was checked by read()
+	private Seller next(ByteBuffer in) {
+		int id = in.getInt();
+		if (id == END)
+			return null;
+		String name = string(in);
+		String email = string(in);
+		long birth = in.getLong();
+		double salary = in.getDouble();
+		Department dep = departmentById.get(in.getInt());
+		return new Seller(id, name, email, birth == Long.MIN_VALUE ? null : new Date(birth),
+				Double.isNaN(salary) ? null : salary, dep);
+	}
+
+	/*
+	 * departmentFor gives the shared instance for (id, name), canonical the
+	 * one for a seller read from the file. Checks the whole file and builds
+	 * the index, the rows themselves are only decoded when asked for.
+	 */
+	static LocalSnapshot read(Path file, String dbUrl, BiFunction<Integer, String, Department> departmentFor,
+			UnaryOperator<Seller> canonical) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < MAGIC.length + 4 + 4 || size > Integer.MAX_VALUE)
+				throw new IOException("Bad snapshot size: " + size);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			// the whole file is checked before any of it is used
+			ByteBuffer body = buffer.duplicate();
+			body.limit((int) size - 4);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if ((int) crc.getValue() != buffer.getInt((int) size - 4))
+				throw new IOException("Snapshot checksum mismatch");
+			buffer.limit((int) size - 4);
+
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (magic[i] != MAGIC[i])
+					throw new IOException("Not a snapshot file");
+			}
+			int version = buffer.getInt();
+			if (version != FORMAT_VERSION)
+				throw new IOException("Snapshot format " + version + ", expected " + FORMAT_VERSION);
+			long writtenAt = buffer.getLong();
+			long changeSeq = buffer.getLong();
+			String url = getString(buffer);
+			if (dbUrl != null && !dbUrl.equals(url))
+				throw new IOException("Snapshot is of another database: " + url);
+
+			int depCount = count(buffer);
+			Map<Integer, Department> deps = new HashMap<>(depCount * 2);
+			List<Department> departments = new ArrayList<>(depCount);
+			for (int i = 0; i < depCount; i++) {
+				int id = buffer.getInt();
+				Department dep = departmentFor.apply(id, getString(buffer));
+				deps.put(id, dep);
+				departments.add(dep);
+			}
+
+			int sellersAt = buffer.position();
+			long[] index = new long[1024];
+			int n = 0;
+			for (;;) {
+				int position = buffer.position();
+				int id = buffer.getInt();
+				if (id == END)
+					break;
+				if (id < 0)
+					throw new IOException("Bad seller Id in snapshot: " + id);
+				skipString(buffer);
+				skipString(buffer);
+				// BirthDate and BaseSalary
+				buffer.position(buffer.position() + 16);
+				if (!deps.containsKey(buffer.getInt()))
+					throw new IOException("Snapshot seller " + id + " without its department");
+				if (n == index.length)
+					index = Arrays.copyOf(index, n * 2);
+				index[n++] = (long) id << 32 | position;
+			}
+			int sellerCount = buffer.getInt();
+			if (sellerCount != n)
+				throw new IOException("Snapshot says " + sellerCount + " sellers, has " + n);
+			if (buffer.hasRemaining())
+				throw new IOException("Snapshot has trailing data");
+			index = Arrays.copyOf(index, n);
+			Arrays.sort(index);
+			return new LocalSnapshot(writtenAt, changeSeq, departments, deps, buffer, sellersAt, index, canonical);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Snapshot is truncated or corrupt", e);
+		}
+	}
+
+	/*
+	 * Writes a snapshot next to file (see replace). The sellers are streamed,
+	 * from the database or an older snapshot, so they are never all in memory.
+	 */
+	static Path writeTemp(Path file, String dbUrl, long writtenAt, long changeSeq, List<Department> departments,
+			Stream<Seller> sellers) throws IOException {
+		Path tmp = ChannelWriter.tempFile(file);
+		try (ChannelWriter out = new ChannelWriter(tmp, false, true)) {
+			ownerOnly(tmp);
+			out.putBytes(MAGIC);
+			out.putInt(FORMAT_VERSION);
+			out.putLong(writtenAt);
+			out.putLong(changeSeq);
+			out.putString(dbUrl);
+			out.putInt(departments.size());
+			for (Department dep : departments) {
+				out.putInt(dep.getId());
+				out.putString(dep.getName());
+			}
+			int count = 0;
+			for (Iterator<Seller> it = sellers.iterator(); it.hasNext(); count++) {
+				Seller obj = it.next();
+				out.putInt(obj.getId());
+				out.putString(obj.getName());
+				out.putString(obj.getEmail());
+				out.putLong(obj.getBirthDate() == null ? Long.MIN_VALUE : obj.getBirthDate().getTime());
+				out.putDouble(obj.getBaseSalary() == null ? Double.NaN : obj.getBaseSalary());
+				out.putInt(obj.getDepartment().getId());
+			}
+			out.putInt(END);
+			out.putInt(count);
+			out.putInt(out.checksum());
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		return tmp;
+	}
+
+	// moves a file from writeTemp over the current one; drop the snapshot read from it first
+	static void replace(Path tmp, Path file) throws IOException {
+		try {
+			ChannelWriter.publish(tmp, file);
+		} catch (IOException e) {
+			// Windows won't replace a file that is still mapped, and a mapping
+			// only goes away when its buffer is collected
+			System.gc();
+			ChannelWriter.publish(tmp, file);
+		}
+	}
+
+	// names, e-mails and salaries: not for the other users of the machine
+	private static void ownerOnly(Path path) throws IOException {
+		try {
+			Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException e) {
+			// not a POSIX file system, the directory's permissions are what there is
+		}
+	}
+
+	private static int count(ByteBuffer buffer) throws IOException {
+		int n = buffer.getInt();
+		if (n < 0 || n > buffer.remaining())
+			throw new IOException("Bad count in snapshot: " + n);
+		return n;
+	}
+
+	private static String getString(ByteBuffer buffer) throws IOException {
+		int length = stringLength(buffer);
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer buffer) throws IOException {
+		int length = stringLength(buffer);
+		if (length > 0)
+			buffer.position(buffer.position() + length);
+	}
+
+	private static int stringLength(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < -1 || length > buffer.remaining())
+			throw new IOException("Bad string length in snapshot: " + length);
+		return length;
+	}
+
+	// unchecked, only for files read() accepted
+	private static String string(ByteBuffer in) {
+		int length = in.getInt();
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,54 @@
+package model.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.dao.DaoFactory;
+import model.dao.ReportDao;
+import model.entities.DepartmentStats;
+
+/*
+ * Dashboard figures. The aggregates are computed once and kept until the
+ * next write through SellerService or DepartmentService (which call
+ * invalidate()), so opening the dashboard again costs nothing.
+ */
+public class ReportService {
+
+	private static volatile List<DepartmentStats> cachedStats;
+	// bumped by every write, so a load that raced with one isn't cached
+	private static final AtomicLong version = new AtomicLong();
+
+	private ReportDao dao = DaoFactory.createReportDao();
+
+	public List<DepartmentStats> findDepartmentStats() {
+		List<DepartmentStats> list = cachedStats;
+		if (list == null) {
+			long before = version.get();
+			list = dao.findDepartmentStats();
+			if (version.get() == before)
+				cachedStats = list;
+		}
+		return new ArrayList<>(list);
+	}
+
+	public static void invalidate() {
+		version.incrementAndGet();
+		cachedStats = null;
+	}
+
+	public static boolean isCached() {
+		return cachedStats != null;
+	}
+
+	public CompletableFuture<List<DepartmentStats>> findDepartmentStatsAsync() {
+		return ServiceExecutor.supply(this::findDepartmentStats);
+	}
+
+	// recomputes the figures, e.g. for changes made by other clients
+	public CompletableFuture<List<DepartmentStats>> refreshAsync() {
+		invalidate();
+		return findDepartmentStatsAsync();
+	}
+}
@@ -0,0 +1,230 @@
+package model.services;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Stream;
+
+import model.dao.SellerCriteria;
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+ * Writes sellers or departments to a file, straight from the DAO's row
+ * stream, so memory use is the same for ten rows or ten million. The file
+ * is written under a temporary name and only renamed to the real one when
+ * complete; a cancelled or failed export leaves nothing behind.
+ *
+ * CSV: a header line then one line per row, UTF-8. The seller CSV has the
+ * columns the CSV import reads (plus Id), with dates as dd/MM/yyyy.
+ *
+ * COLUMNAR, a compact binary format (big-endian):
+ *   "SLRC", version byte (1), kind byte (1 sellers, 2 departments)
+ *   sellers only: the department dictionary, int count then per
+ *   department int id and string name
+ *   blocks of up to BLOCK_SIZE rows: int row count, then each column's
+ *   values for all the block's rows in turn
+ *     sellers: int Id, string Name, string Email, long BirthDate (epoch
+ *     ms, Long.MIN_VALUE if null), double BaseSalary (NaN if null),
+ *     int DepartmentId
+ *     departments: int Id, string Name
+ *   a block with row count 0 ends the file
+ * A string is an int byte length (-1 for null) and UTF-8 bytes.
+ */
+public class SellerExport {
+
+	public enum Format {
+		CSV, COLUMNAR
+	}
+
+	private static final int BLOCK_SIZE = 4096;
+	private static final int PROGRESS_EVERY = 1000;
+	private static final byte[] MAGIC = { 'S', 'L', 'R', 'C' };
+	private static final int VERSION = 1;
+	private static final int KIND_SELLERS = 1;
+	private static final int KIND_DEPARTMENTS = 2;
+
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	private final SellerService sellerService;
+	private final DepartmentService departmentService;
+
+	public SellerExport(SellerService sellerService, DepartmentService departmentService) {
+		this.sellerService = sellerService;
+		this.departmentService = departmentService;
+	}
+
+	// department == null exports all the sellers; returns the rows written.
+	// Throws CancellationException when cancelled, after removing what was written
+	public long exportSellers(Path file, Format format, boolean gzip, Department department, DoubleConsumer progress,
+			BooleanSupplier cancelled) throws IOException {
+		SellerCriteria criteria = new SellerCriteria();
+		if (department != null)
+			criteria.getDepartmentIds().add(department.getId());
+		long total = Math.max(sellerService.count(criteria), 1);
+
+		Path tmp = ChannelWriter.tempFile(file);
+		long rows = 0;
+		try (ChannelWriter out = new ChannelWriter(tmp, gzip);
+				Stream<Seller> sellers = department == null ? sellerService.streamAll()
+						: sellerService.streamByDepartment(department)) {
+			Iterator<Seller> it = sellers.iterator();
+			if (format == Format.CSV) {
+				StringBuilder line = new StringBuilder(256);
+				out.putText("Id,Name,Email,BirthDate,BaseSalary,Department\n");
+				while (it.hasNext()) {
+					writeCsv(line, it.next());
+					out.putText(line);
+					if (++rows % PROGRESS_EVERY == 0 && !progress(progress, rows, total, cancelled))
+						break;
+				}
+			}
+			else {
+				header(out, KIND_SELLERS);
+				List<Department> departments = departmentService.findAll();
+				out.putInt(departments.size());
+				for (Department dep : departments) {
+					out.putInt(dep.getId());
+					out.putString(dep.getName());
+				}
+				Seller[] block = new Seller[BLOCK_SIZE];
+				int n = 0;
+				while (it.hasNext()) {
+					block[n++] = it.next();
+					if (n == BLOCK_SIZE) {
+						writeBlock(out, block, n);
+						n = 0;
+					}
+					if (++rows % PROGRESS_EVERY == 0 && !progress(progress, rows, total, cancelled))
+						break;
+				}
+				if (n > 0)
+					writeBlock(out, block, n);
+				out.putInt(0);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		if (cancelled.getAsBoolean()) {
+			Files.deleteIfExists(tmp);
+			throw new CancellationException("Export cancelled after " + rows + " rows");
+		}
+		ChannelWriter.publish(tmp, file);
+		progress.accept(1.0);
+		return rows;
+	}
+
+	public long exportDepartments(Path file, Format format, boolean gzip) throws IOException {
+		List<Department> departments = departmentService.findAll();
+		Path tmp = ChannelWriter.tempFile(file);
+		try (ChannelWriter out = new ChannelWriter(tmp, gzip)) {
+			if (format == Format.CSV) {
+				StringBuilder line = new StringBuilder(128);
+				out.putText("Id,Name\n");
+				for (Department dep : departments) {
+					line.setLength(0);
+					line.append(dep.getId()).append(',');
+					appendCsv(line, dep.getName());
+					out.putText(line.append('\n'));
+				}
+			}
+			else {
+				header(out, KIND_DEPARTMENTS);
+				for (int from = 0; from < departments.size(); from += BLOCK_SIZE) {
+					List<Department> block = departments.subList(from, Math.min(from + BLOCK_SIZE, departments.size()));
+					out.putInt(block.size());
+					for (Department dep : block)
+						out.putInt(dep.getId());
+					for (Department dep : block)
+						out.putString(dep.getName());
+				}
+				out.putInt(0);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		ChannelWriter.publish(tmp, file);
+		return departments.size();
+	}
+
+	private static boolean progress(DoubleConsumer progress, long rows, long total, BooleanSupplier cancelled) {
+		progress.accept(Math.min(1.0, (double) rows / total));
+		return !cancelled.getAsBoolean();
+	}
+
+	private static void header(ChannelWriter out, int kind) throws IOException {
+		out.putBytes(MAGIC);
+		out.putByte(VERSION);
+		out.putByte(kind);
+	}
+
+	// column after column, so each column's values sit together
+	private static void writeBlock(ChannelWriter out, Seller[] block, int n) throws IOException {
+		out.putInt(n);
+		for (int i = 0; i < n; i++)
+			out.putInt(block[i].getId());
+		for (int i = 0; i < n; i++)
+			out.putString(block[i].getName());
+		for (int i = 0; i < n; i++)
+			out.putString(block[i].getEmail());
+		for (int i = 0; i < n; i++)
+			out.putLong(block[i].getBirthDate() == null ? Long.MIN_VALUE : block[i].getBirthDate().getTime());
+		for (int i = 0; i < n; i++)
+			out.putDouble(block[i].getBaseSalary() == null ? Double.NaN : block[i].getBaseSalary());
+		for (int i = 0; i < n; i++)
+			out.putInt(block[i].getDepartment().getId());
+		// let the sellers go
+		Arrays.fill(block, 0, n, null);
+	}
+
+	private static void writeCsv(StringBuilder line, Seller obj) {
+		line.setLength(0);
+		line.append(obj.getId()).append(',');
+		appendCsv(line, obj.getName());
+		line.append(',');
+		appendCsv(line, obj.getEmail());
+		line.append(',');
+		if (obj.getBirthDate() != null)
+			line.append(DATE_FORMAT.format(obj.getBirthDate().toInstant().atZone(ZoneId.systemDefault())));
+		line.append(',');
+		if (obj.getBaseSalary() != null)
+			line.append(BigDecimal.valueOf(obj.getBaseSalary()).toPlainString());
+		line.append(',');
+		appendCsv(line, obj.getDepartment().getName());
+		line.append('\n');
+	}
+
+	// quoted only when needed
+	private static void appendCsv(StringBuilder line, String value) {
+		if (value == null)
+			return;
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"')
+				line.append('"');
+			line.append(c);
+		}
+		line.append('"');
+	}
+}
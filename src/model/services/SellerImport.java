@@ -0,0 +1,412 @@
+package model.services;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import db.DbException;
+import model.entities.Department;
+import model.entities.Seller;
+import model.exceptions.ValidationException;
+
+/*
+ * Imports sellers from a CSV file with a header line naming the columns
+ * Name, Email, BirthDate, BaseSalary and Department (any order, any case).
+ * BirthDate is dd/MM/yyyy or yyyy-MM-dd, Department is the department's
+ * name.
+ *
+ * The file is read as a stream, a chunk of records at a time: the records
+ * of a chunk are parsed and validated in parallel (SellerValidator, the
+ * rules of the seller form), then the valid ones are written with
+ * SellerService.saveOrUpdateAll, in JDBC batches. Memory use depends on the
+ * chunk size, not the file size. A record is a line, or several when a
+ * quoted value has line breaks in it (SellerExport writes them like that).
+ * Rows with errors are skipped and reported with the line they start on; a
+ * database error stops the import, with the chunks written before it
+ * staying in.
+ */
+public class SellerImport {
+
+	public static class RowError {
+		private final long line;
+		private final String message;
+
+		public RowError(long line, String message) {
+			this.line = line;
+			this.message = message;
+		}
+
+		public long getLine() {
+			return line;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return "Line " + line + ": " + message;
+		}
+	}
+
+	public static class Progress {
+		private final long rowsRead;
+		private final long imported;
+		private final long failed;
+		private final double fraction;
+
+		Progress(long rowsRead, long imported, long failed, double fraction) {
+			this.rowsRead = rowsRead;
+			this.imported = imported;
+			this.failed = failed;
+			this.fraction = fraction;
+		}
+
+		public long getRowsRead() {
+			return rowsRead;
+		}
+
+		public long getImported() {
+			return imported;
+		}
+
+		public long getFailed() {
+			return failed;
+		}
+
+		// share of the file read so far, 0 to 1
+		public double getFraction() {
+			return fraction;
+		}
+	}
+
+	public static class Result {
+		private long imported;
+		private long failed;
+		private boolean cancelled;
+		private final List<RowError> errors = new ArrayList<>();
+
+		public long getImported() {
+			return imported;
+		}
+
+		public long getFailed() {
+			return failed;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		// the first MAX_ERRORS of them, getFailed() has the count
+		public List<RowError> getErrors() {
+			return Collections.unmodifiableList(errors);
+		}
+	}
+
+	private static final int CHUNK_SIZE = 2000;
+	private static final int MAX_ERRORS = 1000;
+	// lines one record may span, see RecordReader
+	private static final int MAX_RECORD_LINES = 100;
+	private static final String[] COLUMNS = { "name", "email", "birthdate", "basesalary", "department" };
+	private static final DateTimeFormatter DATE_BR = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	private final SellerService sellerService;
+	private final DepartmentService departmentService;
+
+	public SellerImport(SellerService sellerService, DepartmentService departmentService) {
+		this.sellerService = sellerService;
+		this.departmentService = departmentService;
+	}
+
+	// one line: the Seller, or why it isn't valid
+	private static class Row {
+		final long line;
+		final Seller seller;
+		final String error;
+
+		Row(long line, Seller seller, String error) {
+			this.line = line;
+			this.seller = seller;
+			this.error = error;
+		}
+	}
+
+	public Result importFile(Path file, Consumer<Progress> progress, BooleanSupplier cancelled) throws IOException {
+		// department names, resolved once for the whole file
+		Map<String, Department> departments = new HashMap<>();
+		for (Department dep : departmentService.findAll())
+			departments.put(dep.getName().trim().toLowerCase(), dep);
+
+		long size = Math.max(Files.size(file), 1);
+		Result result = new Result();
+		try (CountingInputStream in = new CountingInputStream(Files.newInputStream(file));
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			RecordReader records = new RecordReader(reader);
+			String header = records.next();
+			if (header == null)
+				return result;
+			int[] columns = columnIndexes(parseLine(stripBom(header)));
+
+			long rowsRead = 0;
+			List<String> lines = new ArrayList<>(CHUNK_SIZE);
+			long[] lineNumbers = new long[CHUNK_SIZE];
+			String line;
+			boolean more = true;
+			while (more) {
+				line = records.next();
+				more = line != null;
+				if (more && !line.trim().isEmpty()) {
+					lineNumbers[lines.size()] = records.getRecordLine();
+					lines.add(line);
+				}
+				if (lines.size() == CHUNK_SIZE || (!more && !lines.isEmpty())) {
+					if (cancelled.getAsBoolean()) {
+						result.cancelled = true;
+						break;
+					}
+					rowsRead += lines.size();
+					writeChunk(validateChunk(lines, lineNumbers, columns, departments), result);
+					lines.clear();
+					progress.accept(new Progress(rowsRead, result.imported, result.failed,
+							Math.min(1.0, (double) in.getCount() / size)));
+				}
+			}
+		}
+		return result;
+	}
+
+	// parallel, but the rows keep the order of the file
+	private static List<Row> validateChunk(List<String> lines, long[] lineNumbers, int[] columns,
+			Map<String, Department> departments) {
+		return IntStream.range(0, lines.size()).parallel()
+				.mapToObj(i -> toRow(lineNumbers[i], lines.get(i), columns, departments))
+				.collect(Collectors.toList());
+	}
+
+	private void writeChunk(List<Row> rows, Result result) {
+		List<Seller> valid = new ArrayList<>(rows.size());
+		for (Row row : rows) {
+			if (row.seller != null)
+				valid.add(row.seller);
+			else {
+				result.failed++;
+				if (result.errors.size() < MAX_ERRORS)
+					result.errors.add(new RowError(row.line, row.error));
+			}
+		}
+		if (valid.isEmpty())
+			return;
+		try {
+			sellerService.saveOrUpdateAll(valid);
+		} catch (DbException e) {
+			throw new DbException("Import stopped at line " + rows.get(0).line + " after " + result.imported
+					+ " sellers were imported: " + e.getMessage());
+		}
+		result.imported += valid.size();
+	}
+
+	private static Row toRow(long line, String text, int[] columns, Map<String, Department> departments) {
+		List<String> fields = parseLine(text);
+		String name = field(fields, columns[0]);
+		String email = field(fields, columns[1]);
+		String birthDate = field(fields, columns[2]);
+		String baseSalary = field(fields, columns[3]);
+		String department = field(fields, columns[4]);
+
+		Date date = null;
+		if (birthDate != null && !birthDate.trim().isEmpty()) {
+			date = parseDate(birthDate.trim());
+			if (date == null)
+				return new Row(line, null, "birthdate: Invalid date " + birthDate);
+		}
+		Department dep = null;
+		if (department != null && !department.trim().isEmpty()) {
+			dep = departments.get(department.trim().toLowerCase());
+			if (dep == null)
+				return new Row(line, null, "department: Unknown department " + department);
+		}
+		try {
+			return new Row(line, SellerValidator.toSeller(null, trim(name), trim(email), date, baseSalary, dep), null);
+		} catch (ValidationException e) {
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<String, String> error : e.getErrors().entrySet()) {
+				if (sb.length() > 0)
+					sb.append("; ");
+				sb.append(error.getKey()).append(": ").append(error.getValue());
+			}
+			return new Row(line, null, sb.toString());
+		}
+	}
+
+	private static int[] columnIndexes(List<String> header) {
+		int[] indexes = new int[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++) {
+			indexes[i] = -1;
+			for (int j = 0; j < header.size(); j++) {
+				if (header.get(j).trim().equalsIgnoreCase(COLUMNS[i]))
+					indexes[i] = j;
+			}
+			if (indexes[i] < 0)
+				throw new IllegalArgumentException("Column missing from the header: " + COLUMNS[i]);
+		}
+		return indexes;
+	}
+
+	private static String field(List<String> fields, int index) {
+		return index < fields.size() ? fields.get(index) : null;
+	}
+
+	private static String trim(String str) {
+		return str == null ? null : str.trim();
+	}
+
+	private static Date parseDate(String str) {
+		try {
+			LocalDate date = str.indexOf('/') > 0 ? LocalDate.parse(str, DATE_BR) : LocalDate.parse(str);
+			return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	private static String stripBom(String str) {
+		return str.startsWith("\uFEFF") ? str.substring(1) : str;
+	}
+
+	/*
+	 * CSV records: a line, and the lines after it while a quoted value is
+	 * still open (a value with line breaks, read back as \n). An unbalanced
+	 * quote takes at most MAX_RECORD_LINES lines, not the rest of the file.
+	 */
+	private static class RecordReader {
+		private final BufferedReader reader;
+		private long lineNumber;
+		private long recordLine;
+
+		RecordReader(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		// null at the end of the file
+		String next() throws IOException {
+			String line = reader.readLine();
+			if (line == null)
+				return null;
+			recordLine = ++lineNumber;
+			boolean open = oddQuotes(line);
+			if (!open)
+				return line;
+			StringBuilder sb = new StringBuilder(line);
+			for (int n = 1; open && n < MAX_RECORD_LINES && (line = reader.readLine()) != null; n++) {
+				lineNumber++;
+				sb.append('\n').append(line);
+				open = open != oddQuotes(line);
+			}
+			return sb.toString();
+		}
+
+		// the line the last record started on, 1 for the header
+		long getRecordLine() {
+			return recordLine;
+		}
+
+		// every quote opens or closes a value ("" inside one does both)
+		private static boolean oddQuotes(String line) {
+			boolean odd = false;
+			for (int i = 0; i < line.length(); i++) {
+				if (line.charAt(i) == '"')
+					odd = !odd;
+			}
+			return odd;
+		}
+	}
+
+	// comma separated, fields may be quoted with "" for a quote inside them
+	static List<String> parseLine(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						sb.append('"');
+						i++;
+					}
+					else
+						quoted = false;
+				}
+				else
+					sb.append(c);
+			}
+			else if (c == '"')
+				quoted = true;
+			else if (c == ',') {
+				fields.add(sb.toString());
+				sb.setLength(0);
+			}
+			else
+				sb.append(c);
+		}
+		fields.add(sb.toString());
+		return fields;
+	}
+
+	// bytes read from the file, for the progress
+	private static class CountingInputStream extends FilterInputStream {
+		private volatile long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package model.services;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import model.entities.Seller;
+
+/*
+ * In-memory index for type-ahead search over seller names and e-mails.
+ * Every name/e-mail is split into trigrams, and each trigram points to the
+ * set of seller Ids (a BitSet) containing it. A query of three or more
+ * characters only has to check the Ids present in all of its trigrams.
+ * Shorter queries are answered from the prefixes of the words.
+ */
+public class SellerSearchIndex {
+
+	public static class Hit {
+		private final int id;
+		private final String name;
+		private final String email;
+		private final int score;
+
+		public Hit(int id, String name, String email, int score) {
+			this.id = id;
+			this.name = name;
+			this.email = email;
+			this.score = score;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getEmail() {
+			return email;
+		}
+
+		public int getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return name + " <" + email + ">";
+		}
+	}
+
+	private static class Entry {
+		final int id;
+		final String name;
+		final String email;
+		final String nameKey;
+		final String emailKey;
+
+		Entry(int id, String name, String email) {
+			this.id = id;
+			this.name = name;
+			this.email = email;
+			this.nameKey = normalize(name);
+			this.emailKey = normalize(email);
+		}
+	}
+
+	private static final Comparator<Hit> RANKING = Comparator.comparingInt(Hit::getScore).reversed()
+			.thenComparing(Hit::getName, String.CASE_INSENSITIVE_ORDER).thenComparingInt(Hit::getId);
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<Integer, Entry> entries = new HashMap<>();
+	private final Map<String, BitSet> trigrams = new HashMap<>();
+	// one and two character word prefixes, for the short queries
+	private final Map<String, BitSet> prefixes = new HashMap<>();
+	private volatile boolean ready;
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	// fills the index from scratch, the stream is closed here
+	public void build(Stream<Seller> sellers) {
+		lock.writeLock().lock();
+		try {
+			entries.clear();
+			trigrams.clear();
+			prefixes.clear();
+			try (Stream<Seller> s = sellers) {
+				s.forEach(this::add);
+			}
+			ready = true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void put(Seller obj) {
+		if (obj.getId() == null)
+			return;
+		lock.writeLock().lock();
+		try {
+			Entry old = entries.get(obj.getId());
+			if (old != null) {
+				if (Objects.equals(old.name, obj.getName()) && Objects.equals(old.email, obj.getEmail()))
+					return;
+				unindex(old);
+			}
+			add(obj);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Integer id) {
+		lock.writeLock().lock();
+		try {
+			Entry old = entries.remove(id);
+			if (old != null)
+				unindex(old);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return entries.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// best k matches for the text, best first
+	public List<Hit> search(String text, int k) {
+		String query = normalize(text);
+		if (query.isEmpty() || k <= 0)
+			return Collections.emptyList();
+		lock.readLock().lock();
+		try {
+			BitSet candidates = candidates(query);
+			if (candidates == null)
+				return Collections.emptyList();
+			PriorityQueue<Hit> best = new PriorityQueue<>(k + 1, RANKING.reversed());
+			for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+				Entry entry = entries.get(id);
+				int score = entry == null ? 0 : score(entry, query);
+				if (score == 0)
+					continue;
+				best.add(new Hit(entry.id, entry.name, entry.email, score));
+				if (best.size() > k)
+					best.poll();
+			}
+			List<Hit> hits = new ArrayList<>(best);
+			hits.sort(RANKING);
+			return hits;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private BitSet candidates(String query) {
+		if (query.length() < 3) {
+			BitSet ids = prefixes.get(query);
+			return ids == null ? null : (BitSet) ids.clone();
+		}
+		BitSet result = null;
+		for (int i = 0; i + 3 <= query.length(); i++) {
+			BitSet ids = trigrams.get(query.substring(i, i + 3));
+			if (ids == null)
+				return null;
+			if (result == null)
+				result = (BitSet) ids.clone();
+			else
+				result.and(ids);
+			if (result.isEmpty())
+				return null;
+		}
+		return result;
+	}
+
+	// name prefix > start of a word > anywhere, names count more than e-mails
+	private static int score(Entry entry, String query) {
+		return Math.max(2 * fieldScore(entry.nameKey, query), fieldScore(entry.emailKey, query));
+	}
+
+	private static int fieldScore(String field, String query) {
+		int index = field.indexOf(query);
+		if (index < 0)
+			return 0;
+		if (index == 0)
+			return 3;
+		char before = field.charAt(index - 1);
+		return Character.isLetterOrDigit(before) ? 1 : 2;
+	}
+
+	private void add(Seller obj) {
+		Entry entry = new Entry(obj.getId(), obj.getName(), obj.getEmail());
+		entries.put(entry.id, entry);
+		index(entry, true);
+	}
+
+	private void unindex(Entry entry) {
+		index(entry, false);
+	}
+
+	private void index(Entry entry, boolean add) {
+		for (String key : new String[] { entry.nameKey, entry.emailKey }) {
+			for (int i = 0; i + 3 <= key.length(); i++)
+				mark(trigrams, key.substring(i, i + 3), entry.id, add);
+			for (int i = 0; i < key.length(); i++) {
+				// word starts, so "jo" finds "Mary Jones" and "jones@..." alike
+				if (i == 0 || !Character.isLetterOrDigit(key.charAt(i - 1))) {
+					mark(prefixes, key.substring(i, i + 1), entry.id, add);
+					if (i + 2 <= key.length())
+						mark(prefixes, key.substring(i, i + 2), entry.id, add);
+				}
+			}
+		}
+	}
+
+	private static void mark(Map<String, BitSet> index, String key, int id, boolean add) {
+		if (add) {
+			index.computeIfAbsent(key, k -> new BitSet()).set(id);
+			return;
+		}
+		BitSet ids = index.get(key);
+		if (ids != null) {
+			ids.clear(id);
+			if (ids.isEmpty())
+				index.remove(key);
+		}
+	}
+
+	private static String normalize(String str) {
+		return str == null ? "" : str.trim().toLowerCase();
+	}
+}
@@ -1,27 +1,308 @@
 package model.services;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import db.DbException;
 import model.dao.DaoFactory;
+import model.dao.SellerCriteria;
 import model.dao.SellerDao;
+import model.entities.Department;
 import model.entities.Seller;
 
 public class SellerService {
 	
+	// COUNT(*) scans the table, so the total is cached for a while
+	private static final long COUNT_TTL_MILLIS = 30000;
+	private static volatile int cachedCount = -1;
+	private static volatile long cachedCountAt;
+	
+	// type-ahead index, shared by every SellerService and built on first use
+	private static final SellerSearchIndex searchIndex = new SellerSearchIndex();
+	private static final AtomicBoolean indexRequested = new AtomicBoolean();
+	
+	// local copy (see SnapshotService): answers the reads until the database
+	// has been compared with it, and afterwards when the database is away
+	private static volatile LocalSnapshot snapshot;
+	private static volatile boolean snapshotOnly;
+	
+	// saves waiting to be written in batches, only with writeBehind.enabled=true
+	private static volatile WriteBehindQueue<Seller> writeBehind;
+	
 	private SellerDao dao = DaoFactory.createSellerDao();
 	
+	private static synchronized WriteBehindQueue<Seller> writeBehind() {
+		if (writeBehind == null)
+			writeBehind = WriteBehindQueue.create("seller", new SellerService()::saveOrUpdateAll, Seller::getId,
+					lost -> ChangeFeedService.restoreSellers(ids(lost)));
+		return writeBehind;
+	}
+	
+	// reads see the saves still waiting in the queue (not from inside a
+	// unit of work, they would become part of it)
+	private static void flushPending() {
+		WriteBehindQueue<Seller> queue = writeBehind;
+		if (queue != null && queue.size() > 0 && !UnitOfWork.isActive())
+			queue.flush();
+	}
+	
+	// Ids of the rows that exist, new ones never made it to the database
+	private static List<Integer> ids(List<Seller> list) {
+		List<Integer> ids = new ArrayList<>(list.size());
+		for (Seller obj : list) {
+			if (obj.getId() != null)
+				ids.add(obj.getId());
+		}
+		return ids;
+	}
+	
+	private static void discardPending(Integer id) {
+		WriteBehindQueue<Seller> queue = writeBehind;
+		if (queue != null && id != null)
+			queue.discard(id);
+	}
+	
+	static void useSnapshot(LocalSnapshot s, boolean only) {
+		snapshot = s;
+		snapshotOnly = only;
+		cachedCount = -1;
+	}
+	
+	static LocalSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	private static <T> T read(Supplier<T> database, Function<LocalSnapshot, T> local) {
+		flushPending();
+		LocalSnapshot s = snapshot;
+		if (s != null && snapshotOnly)
+			return local.apply(s);
+		try {
+			return database.get();
+		} catch (DbException e) {
+			if (s == null)
+				throw e;
+			// offline, the last known rows are better than an error
+			return local.apply(s);
+		}
+	}
+	
 	public List<Seller> findAll(){
-		return dao.findAll();
+		return read(dao::findAll, s -> s.findByCriteria(new SellerCriteria(), null, Integer.MAX_VALUE));
+	}
+	
+	public Seller findById(Integer id){
+		return read(() -> dao.findById(id), s -> s.findById(id));
+	}
+	
+	public List<Seller> findPage(Seller after, int pageSize){
+		return read(() -> dao.findPage(after, pageSize), s -> s.findByCriteria(new SellerCriteria(), after, pageSize));
+	}
+	
+	// close the stream (try-with-resources) if it is not read to the end
+	public Stream<Seller> streamAll(){
+		flushPending();
+		return dao.streamAll();
+	}
+	
+	public Stream<Seller> streamByDepartment(Department department){
+		flushPending();
+		return dao.streamByDepartment(department);
+	}
+	
+	public List<Seller> findByCriteria(SellerCriteria criteria, Seller after, int pageSize){
+		return read(() -> dao.findByCriteria(criteria, after, pageSize), s -> s.findByCriteria(criteria, after, pageSize));
+	}
+	
+	// unfiltered counts go through the cached count()
+	public int count(SellerCriteria criteria) {
+		return criteria.hasFilters() ? read(() -> dao.countByCriteria(criteria), s -> s.count(criteria)) : count();
+	}
+	
+	public int count() {
+		return read(this::countFromDatabase, LocalSnapshot::size);
+	}
+	
+	private int countFromDatabase() {
+		int count = cachedCount;
+		if (count < 0 || System.currentTimeMillis() - cachedCountAt > COUNT_TTL_MILLIS) {
+			count = dao.count();
+			cachedCountAt = System.currentTimeMillis();
+			cachedCount = count;
+		}
+		return count;
 	}
 
-	public void saveOrUpdate(Seller obj) {
-		if(obj.getId()==null)
+	// returns the seller as stored, the cached instance for its Id from now on
+	public Seller saveOrUpdate(Seller obj) {
+		// written now, an older edit still waiting would undo it
+		discardPending(obj.getId());
+		if(obj.getId()==null) {
 			dao.insert(obj);
+			cachedCount = -1;
+		}
 		else
 			dao.update(obj);
+		searchIndex.put(obj);
+		ReportService.invalidate();
+		return obj;
 	}
 	
 	public void remove(Seller obj) {
+		discardPending(obj.getId());
 		dao.deleteById(obj.getId());
+		cachedCount = -1;
+		searchIndex.remove(obj.getId());
+		ReportService.invalidate();
+	}
+	
+	public void saveOrUpdateAll(List<Seller> list) {
+		List<Seller> toInsert = new ArrayList<>();
+		List<Seller> toUpdate = new ArrayList<>();
+		for (Seller obj : list) {
+			if (obj.getId() == null)
+				toInsert.add(obj);
+			else
+				toUpdate.add(obj);
+		}
+		// a commit per batch.size rows; inside a unit of work (moveToDepartment)
+		// it all commits with the unit, and if that rolls back the new rows
+		// don't exist after all
+		UnitOfWork.afterRollback(() -> toInsert.forEach(obj -> obj.setId(null)));
+		dao.insertAll(toInsert);
+		dao.updateAll(toUpdate);
+		if (!toInsert.isEmpty())
+			cachedCount = -1;
+		for (Seller obj : list)
+			searchIndex.put(obj);
+		ReportService.invalidate();
+	}
+	
+	public void removeAll(List<Seller> list) {
+		List<Integer> ids = new ArrayList<>();
+		for (Seller obj : list) {
+			ids.add(obj.getId());
+			discardPending(obj.getId());
+		}
+		dao.deleteByIds(ids);
+		cachedCount = -1;
+		for (Integer id : ids)
+			searchIndex.remove(id);
+		ReportService.invalidate();
+	}
+	
+	// changes made by other clients, read from the change log by ChangeFeedService
+	static void applyRemoteChanges(List<Seller> changed, List<Integer> removed, boolean countChanged) {
+		if (countChanged)
+			cachedCount = -1;
+		for (Seller obj : changed)
+			searchIndex.put(obj);
+		for (Integer id : removed)
+			searchIndex.remove(id);
+	}
+	
+	// too many remote changes to apply one by one, or a rollback: count and index are read again
+	static void invalidateCaches() {
+		cachedCount = -1;
+		if (indexRequested.compareAndSet(true, false))
+			new SellerService().requestIndex();
+	}
+	
+	/*
+	 * Creates the department if it is new and moves the sellers into it, all
+	 * or nothing. The sellers passed in are left as they are (the views may be
+	 * showing them); the moved ones are new instances, returned for the views.
+	 */
+	public List<Seller> moveToDepartment(List<Seller> list, Department department) {
+		return UnitOfWork.call(() -> {
+			if (department.getId() == null) {
+				UnitOfWork.afterRollback(() -> department.setId(null));
+				DaoFactory.createDepartmentDao().insert(department);
+			}
+			List<Seller> moved = new ArrayList<>(list.size());
+			for (Seller obj : list)
+				moved.add(new Seller(obj.getId(), obj.getName(), obj.getEmail(), obj.getBirthDate(),
+						obj.getBaseSalary(), department));
+			saveOrUpdateAll(moved);
+			return moved;
+		});
+	}
+	
+	public CompletableFuture<List<Seller>> moveToDepartmentAsync(List<Seller> list, Department department) {
+		return ServiceExecutor.supply(() -> moveToDepartment(list, department));
+	}
+	
+	// ranked matches on name/e-mail for type-ahead
+	public List<SellerSearchIndex.Hit> search(String text, int k) {
+		if (!searchIndex.isReady()) {
+			requestIndex();
+			// still loading the index, a name prefix query will do meanwhile
+			SellerCriteria criteria = new SellerCriteria();
+			criteria.setNamePrefix(text);
+			List<SellerSearchIndex.Hit> hits = new ArrayList<>();
+			for (Seller obj : findByCriteria(criteria, null, k))
+				hits.add(new SellerSearchIndex.Hit(obj.getId(), obj.getName(), obj.getEmail(), 0));
+			return hits;
+		}
+		return searchIndex.search(text, k);
+	}
+	
+	// builds the search index in the background, once
+	public void requestIndex() {
+		if (indexRequested.compareAndSet(false, true)) {
+			ServiceExecutor.run(() -> searchIndex.build(dao.streamAll())).whenComplete((v, e) -> {
+				if (e != null)
+					indexRequested.set(false); // try again on the next search
+			});
+		}
+	}
+	
+	// async variants, run on the ServiceExecutor instead of the calling thread
+	
+	public CompletableFuture<List<Seller>> findAllAsync() {
+		return ServiceExecutor.supply(this::findAll);
+	}
+	
+	public CompletableFuture<Seller> findByIdAsync(Integer id) {
+		return ServiceExecutor.supply(() -> findById(id));
+	}
+	
+	public CompletableFuture<List<SellerSearchIndex.Hit>> searchAsync(String text, int k) {
+		return ServiceExecutor.supply(() -> search(text, k));
+	}
+	
+	public CompletableFuture<Integer> countAsync() {
+		return ServiceExecutor.supply(this::count);
+	}
+	
+	public CompletableFuture<Integer> countAsync(SellerCriteria criteria) {
+		return ServiceExecutor.supply(() -> count(criteria));
+	}
+	
+	public CompletableFuture<Seller> saveOrUpdateAsync(Seller obj) {
+		return ServiceExecutor.supply(() -> saveOrUpdate(obj));
+	}
+	
+	public boolean isWriteBehind() {
+		return WriteBehindQueue.isEnabled();
+	}
+	
+	// queued with write-behind on (saveOrUpdateAsync otherwise), the future
+	// completes once the seller is in the database and has its Id, with the
+	// instance stored (a later save of the same Id may have replaced obj),
+	// or null if the save was dropped for a newer one made straight away
+	public CompletableFuture<Seller> saveOrUpdateLater(Seller obj) {
+		if (!isWriteBehind())
+			return saveOrUpdateAsync(obj);
+		return writeBehind().enqueue(obj);
+	}
+	
+	public CompletableFuture<Void> removeAsync(Seller obj) {
+		return ServiceExecutor.run(() -> remove(obj));
 	}
 }
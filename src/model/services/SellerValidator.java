@@ -0,0 +1,70 @@
+package model.services;
+
+import java.util.Date;
+
+import model.entities.Department;
+import model.entities.Seller;
+import model.exceptions.ValidationException;
+
+/*
+ * The rules a seller must follow before it is saved, shared by the seller
+ * form and the CSV import. The errors are keyed by field (name, email,
+ * birthdate, baseSalary, department), which is what the form's error
+ * labels look for.
+ */
+public class SellerValidator {
+
+	// column sizes of the seller table
+	public static final int NAME_MAX_LENGTH = 70;
+	public static final int EMAIL_MAX_LENGTH = 50;
+
+	public static Seller toSeller(Integer id, String name, String email, Date birthDate, String baseSalary,
+			Department department) {
+		Seller obj = new Seller();
+		ValidationException exception = new ValidationException("Validation Error");
+
+		obj.setId(id);
+
+		if (name == null || name.trim().equals(""))
+			exception.addError("name", "Field can't be empty");
+		else if (name.length() > NAME_MAX_LENGTH)
+			exception.addError("name", "More than " + NAME_MAX_LENGTH + " characters");
+		obj.setName(name);
+
+		if (email == null || email.trim().equals(""))
+			exception.addError("email", "Field can't be empty");
+		else if (email.length() > EMAIL_MAX_LENGTH)
+			exception.addError("email", "More than " + EMAIL_MAX_LENGTH + " characters");
+		obj.setEmail(email);
+
+		if (birthDate == null)
+			exception.addError("birthdate", "Field can't be empty");
+		obj.setBirthDate(birthDate);
+
+		if (baseSalary == null || baseSalary.trim().equals(""))
+			exception.addError("baseSalary", "Field can't be empty");
+		else {
+			Double value = tryParseToDouble(baseSalary.trim());
+			if (value == null || value < 0)
+				exception.addError("baseSalary", "Invalid value");
+			obj.setBaseSalary(value);
+		}
+
+		if (department == null)
+			exception.addError("department", "Department not selected");
+		obj.setDepartment(department);
+
+		if (exception.getErrors().size() > 0)
+			throw exception;
+
+		return obj;
+	}
+
+	private static Double tryParseToDouble(String str) {
+		try {
+			return Double.parseDouble(str);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
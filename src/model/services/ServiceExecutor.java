@@ -0,0 +1,52 @@
+package model.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import db.DB;
+
+/*
+ * Bounded pool the *Async service methods run on, so database calls stay off
+ * the JavaFX Application Thread. Its size should not go over pool.maxSize,
+ * otherwise the extra threads only wait for a connection.
+ */
+public class ServiceExecutor {
+
+	private static ExecutorService executor = null;
+
+	public static synchronized ExecutorService get() {
+		if (executor == null) {
+			int threads = DB.getIntProperty("service.threads", 4);
+			AtomicInteger count = new AtomicInteger();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(DB.getIntProperty("service.queueSize", 1000)), r -> {
+						Thread t = new Thread(r, "service-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+
+	public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(task, get());
+	}
+
+	public static CompletableFuture<Void> run(Runnable task) {
+		return CompletableFuture.runAsync(task, get());
+	}
+
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+}
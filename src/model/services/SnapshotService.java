@@ -0,0 +1,301 @@
+package model.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import db.DB;
+import gui.listeners.DataChangeEvent;
+import model.dao.ChangeLogDao;
+import model.dao.DaoFactory;
+import model.dao.SellerDao;
+import model.dao.impl.CachingDepartmentDao;
+import model.dao.impl.SellerCache;
+import model.entities.ChangeLogEntry;
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+ * Local snapshot of departments and sellers (LocalSnapshot) for a cold
+ * start that doesn't wait on the database. load() maps the file, if there
+ * is a valid one, and the lists are served from it right away. reconcile()
+ * then brings it up to date, tells the open views what differs, switches
+ * the reads back to the database and writes the new snapshot for the next
+ * start. Up to date means the change log entries after the snapshot's Seq
+ * when the log still has them all (and there are at most
+ * snapshot.maxCatchUp), otherwise one pass over the seller table.
+ *
+ * Off unless snapshot.enabled=true: the file holds e-mails, birth dates and
+ * salaries. snapshot.file is where it is kept (readable by its owner only
+ * where the file system allows it), and snapshots older than
+ * snapshot.maxAgeHours are not used.
+ */
+public class SnapshotService {
+
+	public static boolean isEnabled() {
+		return Boolean.parseBoolean(DB.getProperty("snapshot.enabled", "false"));
+	}
+
+	private static Path file() {
+		return Paths.get(DB.getProperty("snapshot.file", "snapshot.bin"));
+	}
+
+	private static LocalSnapshot read(Path file) throws IOException {
+		return LocalSnapshot.read(file, DB.getProperty("dburl", null), DaoFactory.getDepartmentCache()::canonicalize,
+				DaoFactory.getSellerCache()::putIfAbsent);
+	}
+
+	// true when the lists can be shown from the snapshot
+	public static boolean load() {
+		Path file = file();
+		if (!isEnabled() || !Files.exists(file))
+			return false;
+		LocalSnapshot snapshot;
+		try {
+			snapshot = read(file);
+		} catch (IOException e) {
+			discard(file, e.getMessage());
+			return false;
+		}
+		long maxAgeMillis = DB.getIntProperty("snapshot.maxAgeHours", 168) * 3600000L;
+		if (System.currentTimeMillis() - snapshot.getWrittenAt() > maxAgeMillis) {
+			discard(file, "older than " + DB.getIntProperty("snapshot.maxAgeHours", 168) + " hours");
+			return false;
+		}
+		DaoFactory.getDepartmentCache().seedAll(snapshot.getDepartments());
+		SellerService.useSnapshot(snapshot, true);
+		return true;
+	}
+
+	private static void discard(Path file, String reason) {
+		System.err.println("Snapshot " + file + " not used: " + reason);
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// written over next time anyway
+		}
+	}
+
+	// differences with the snapshot for the views, as many as they take one by one
+	private static class Changes {
+		final int limit = DB.getIntProperty("changefeed.reloadThreshold", 500);
+		final SellerCache cache = DaoFactory.getSellerCache();
+		final List<Seller> changed = new ArrayList<>();
+		final List<Integer> removed = new ArrayList<>();
+		final List<DataChangeEvent<Seller>> events = new ArrayList<>();
+		// past the limit the views reload, only the cached instances are kept right
+		boolean overflow;
+
+		boolean full() {
+			if (!overflow && events.size() >= limit)
+				overflow = true;
+			return overflow;
+		}
+
+		void update(Seller row, DataChangeEvent.Type type) {
+			if (full()) {
+				if (cache.peek(row.getId()) != null)
+					cache.merge(row);
+				return;
+			}
+			Seller obj = cache.merge(row);
+			changed.add(obj);
+			events.add(new DataChangeEvent<>(obj, type));
+		}
+
+		void remove(Integer id) {
+			// the last known data, if any, tells the views whether it was on screen
+			Seller obj = cache.peek(id);
+			cache.evict(id);
+			if (full())
+				return;
+			if (obj == null) {
+				obj = new Seller();
+				obj.setId(id);
+			}
+			removed.add(id);
+			events.add(new DataChangeEvent<>(obj, DataChangeEvent.Type.REMOVED));
+		}
+	}
+
+	/*
+	 * Brings the loaded snapshot (if any) up to date with the database, sends
+	 * the differences to the views and saves the new snapshot. Returns the
+	 * change log Seq the data is up to date with, -1 if there is no change log.
+	 */
+	public static long reconcile() {
+		// read first, whatever changes while the tables are read comes through the feed again
+		long seq = ChangeFeedService.readLastSeq();
+		LocalSnapshot old = SellerService.getSnapshot();
+
+		CachingDepartmentDao departments = DaoFactory.getDepartmentCache();
+		// the names are updated in place, so compare with copies
+		Map<Integer, String> oldNames = new HashMap<>();
+		if (old != null) {
+			for (Department dep : old.getDepartments())
+				oldNames.put(dep.getId(), dep.getName());
+		}
+		departments.invalidateAll();
+		List<Department> deps = departments.findAll();
+		List<DataChangeEvent<Department>> depEvents = new ArrayList<>();
+		if (old != null) {
+			Set<Integer> seen = new HashSet<>();
+			for (Department dep : deps) {
+				seen.add(dep.getId());
+				if (!oldNames.containsKey(dep.getId()))
+					depEvents.add(new DataChangeEvent<>(dep, DataChangeEvent.Type.INSERTED));
+				else if (!Objects.equals(oldNames.get(dep.getId()), dep.getName()))
+					depEvents.add(new DataChangeEvent<>(dep, DataChangeEvent.Type.UPDATED));
+			}
+			for (Department dep : old.getDepartments()) {
+				if (!seen.contains(dep.getId())) {
+					departments.invalidate(dep.getId());
+					depEvents.add(new DataChangeEvent<>(dep, DataChangeEvent.Type.REMOVED));
+				}
+			}
+		}
+
+		Changes changes = new Changes();
+		Path tmp = null;
+		try {
+			List<ChangeLogEntry> log = old == null ? null : changesSince(old.getChangeSeq(), seq);
+			tmp = log != null ? catchUp(old, log, seq, deps, changes) : scan(old, seq, deps, changes);
+		} catch (IOException e) {
+			System.err.println("Snapshot " + file() + " not saved: " + e.getMessage());
+			// the comparison stopped half way, the views read everything again
+			changes.overflow = true;
+		}
+
+		// from now on the reads go to the database, the snapshot is only for when it is away;
+		// the old one is let go first, a mapped file can't be replaced everywhere
+		old = null;
+		SellerService.useSnapshot(null, false);
+		LocalSnapshot fresh = null;
+		try {
+			if (tmp != null)
+				LocalSnapshot.replace(tmp, file());
+			fresh = read(file());
+		} catch (IOException e) {
+			System.err.println("Snapshot " + file() + " not saved: " + e.getMessage());
+		}
+		SellerService.useSnapshot(fresh, false);
+
+		if (changes.overflow) {
+			ChangeFeedService.invalidateAll();
+			return seq;
+		}
+		if (!changes.changed.isEmpty() || !changes.removed.isEmpty()) {
+			SellerService.applyRemoteChanges(changes.changed, changes.removed, true);
+			ReportService.invalidate();
+		}
+		ChangeFeedService.publish(depEvents, changes.events);
+		return seq;
+	}
+
+	// the change log after fromSeq, or null when it doesn't go back that far or is too long
+	private static List<ChangeLogEntry> changesSince(long fromSeq, long toSeq) {
+		if (fromSeq < 0 || toSeq < fromSeq)
+			return null;
+		List<ChangeLogEntry> entries = new ArrayList<>();
+		if (toSeq == fromSeq)
+			return entries;
+		ChangeLogDao dao = DaoFactory.createChangeLogDao();
+		// entries before the first one still there may have been purged
+		long first = dao.findFirstSeq();
+		if (first <= 0 || first > fromSeq + 1)
+			return null;
+		int max = DB.getIntProperty("snapshot.maxCatchUp", 10000);
+		int batchSize = DB.getIntProperty("changefeed.batchSize", 1000);
+		long after = fromSeq;
+		List<ChangeLogEntry> batch;
+		do {
+			batch = dao.findAfter(after, batchSize);
+			entries.addAll(batch);
+			if (entries.size() > max)
+				return null; // one pass over the table is cheaper
+			if (!batch.isEmpty())
+				after = batch.get(batch.size() - 1).getSeq();
+		} while (batch.size() == batchSize && after < toSeq);
+		return entries;
+	}
+
+	// re-reads only the sellers the log names, the rest is copied over from the old file
+	private static Path catchUp(LocalSnapshot old, List<ChangeLogEntry> log, long seq, List<Department> deps,
+			Changes changes) throws IOException {
+		Set<Integer> ids = new LinkedHashSet<>();
+		for (ChangeLogEntry entry : log) {
+			if ("seller".equalsIgnoreCase(entry.getTableName()))
+				ids.add(entry.getRowId());
+		}
+		// findByIds puts the rows in the identity map, so compare with the stored ones
+		List<Seller> rows = DaoFactory.createSellerDao().findByIds(new ArrayList<>(ids));
+		Set<Integer> found = new HashSet<>(rows.size() * 2);
+		for (Seller row : rows) {
+			found.add(row.getId());
+			int i = old.indexOf(row.getId());
+			if (i < 0)
+				changes.update(row, DataChangeEvent.Type.INSERTED);
+			else if (!sameData(old.storedAt(i), row))
+				changes.update(row, DataChangeEvent.Type.UPDATED);
+		}
+		for (Integer id : ids) {
+			if (!found.contains(id) && old.indexOf(id) >= 0)
+				changes.remove(id);
+		}
+		Stream<Seller> kept = old.stream().filter(obj -> !ids.contains(obj.getId()));
+		return LocalSnapshot.writeTemp(file(), DB.getProperty("dburl", null), System.currentTimeMillis(), seq, deps,
+				Stream.concat(kept, rows.stream()));
+	}
+
+	// one pass over the seller table, straight into the new file
+	private static Path scan(LocalSnapshot old, long seq, List<Department> deps, Changes changes) throws IOException {
+		SellerDao sellerDao = DaoFactory.createSellerDao();
+		// which of the old rows are still there, by index position
+		BitSet seen = new BitSet(old == null ? 0 : old.size());
+		Path tmp;
+		try (Stream<Seller> rows = sellerDao.streamAll()) {
+			tmp = LocalSnapshot.writeTemp(file(), DB.getProperty("dburl", null), System.currentTimeMillis(), seq,
+					deps, rows.peek(row -> {
+						if (old == null)
+							return;
+						int i = old.indexOf(row.getId());
+						if (i < 0) {
+							changes.update(row, DataChangeEvent.Type.INSERTED);
+							return;
+						}
+						seen.set(i);
+						if (!sameData(old.storedAt(i), row))
+							changes.update(row, DataChangeEvent.Type.UPDATED);
+					}));
+		}
+		if (old != null) {
+			for (int i = seen.nextClearBit(0); i < old.size(); i = seen.nextClearBit(i + 1))
+				changes.remove(old.idAt(i));
+		}
+		return tmp;
+	}
+
+	// java.sql dates don't equal java.util ones of the same time
+	private static Long time(Date date) {
+		return date == null ? null : date.getTime();
+	}
+
+	private static boolean sameData(Seller a, Seller b) {
+		return Objects.equals(a.getName(), b.getName()) && Objects.equals(a.getEmail(), b.getEmail())
+				&& Objects.equals(time(a.getBirthDate()), time(b.getBirthDate()))
+				&& Objects.equals(a.getBaseSalary(), b.getBaseSalary())
+				&& Objects.equals(a.getDepartment().getId(), b.getDepartment().getId());
+	}
+}
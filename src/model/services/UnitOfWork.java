@@ -0,0 +1,111 @@
+package model.services;
+
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import db.DB;
+import db.Transaction;
+import model.dao.DaoFactory;
+
+/*
+ * Runs several service or DAO calls as one database transaction: the same
+ * connection for all of them, a single commit at the end, and nothing
+ * stored if any of them throws.
+ *
+ * UnitOfWork.run(() -> { ... });
+ * List<Seller> list = UnitOfWork.readOnly().call(() -> ...);
+ * UnitOfWork.isolation(Isolation.SERIALIZABLE).run(() -> ...);
+ *
+ * Units started inside another one on the same thread join it. On rollback
+ * the DAO caches are emptied, since they may hold rows that were never
+ * committed; objects passed in may still carry the changes (and new ones
+ * their Id), so reload them.
+ */
+public class UnitOfWork {
+
+	public enum Isolation {
+		DEFAULT(Transaction.DEFAULT_ISOLATION),
+		READ_UNCOMMITTED(Connection.TRANSACTION_READ_UNCOMMITTED),
+		READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+		REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+		SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+		private final int level;
+
+		Isolation(int level) {
+			this.level = level;
+		}
+	}
+
+	private static final UnitOfWork READ_WRITE = new UnitOfWork(false, Isolation.DEFAULT);
+
+	private final boolean readOnly;
+	private final Isolation isolation;
+
+	private UnitOfWork(boolean readOnly, Isolation isolation) {
+		this.readOnly = readOnly;
+		this.isolation = isolation;
+	}
+
+	// consistent reads, and the database can skip the write bookkeeping
+	public static UnitOfWork readOnly() {
+		return new UnitOfWork(true, Isolation.DEFAULT);
+	}
+
+	public static UnitOfWork isolation(Isolation isolation) {
+		return new UnitOfWork(false, isolation);
+	}
+
+	public UnitOfWork withIsolation(Isolation isolation) {
+		return new UnitOfWork(readOnly, isolation);
+	}
+
+	public static void run(Runnable work) {
+		READ_WRITE.execute(work);
+	}
+
+	public static <T> T call(Supplier<T> work) {
+		return READ_WRITE.execute(work);
+	}
+
+	public void execute(Runnable work) {
+		execute(() -> {
+			work.run();
+			return null;
+		});
+	}
+
+	public <T> T execute(Supplier<T> work) {
+		try (Transaction tx = Transaction.begin(DB.getPool(), readOnly, isolation.level)) {
+			if (!readOnly)
+				tx.afterRollback(UnitOfWork::clearCaches);
+			T result = work.get();
+			tx.commit();
+			return result;
+		}
+	}
+
+	// the whole unit on one ServiceExecutor thread, the transaction belongs to it
+	public <T> CompletableFuture<T> executeAsync(Supplier<T> work) {
+		return ServiceExecutor.supply(() -> execute(work));
+	}
+
+	public static boolean isActive() {
+		return Transaction.current() != null;
+	}
+
+	// runs action if the current unit rolls back, nothing without one
+	static void afterRollback(Runnable action) {
+		Transaction tx = Transaction.current();
+		if (tx != null)
+			tx.afterRollback(action);
+	}
+
+	private static void clearCaches() {
+		DaoFactory.getSellerCache().clear();
+		DaoFactory.getDepartmentCache().clear();
+		ReportService.invalidate();
+		SellerService.invalidateCaches();
+	}
+}
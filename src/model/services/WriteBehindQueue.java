@@ -0,0 +1,310 @@
+package model.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import db.DB;
+
+/*
+ * Write-behind for the saves of a service. Saved objects wait here and are
+ * written together by the service's saveOrUpdateAll (JDBC batches), when
+ * writeBehind.maxPending of them are waiting or writeBehind.delayMs after
+ * the first one, whichever comes first. Saving the same Id again before
+ * that replaces the waiting object, so only the last edit is written.
+ *
+ * A failed write is tried again later (the delay doubles each time) up to
+ * writeBehind.maxRetries times; after that the rows are written one by one
+ * so a single bad row doesn't take the others down, and the ones that
+ * still fail are given up: what they changed in memory is put back as
+ * stored, and they are reported to the error listeners.
+ *
+ * Off unless writeBehind.enabled=true.
+ */
+public class WriteBehindQueue<T> {
+
+	public interface ErrorListener {
+		// called on the queue's thread with the rows that were not written
+		void onError(String queue, List<?> rows, Throwable error);
+	}
+
+	private static final List<WriteBehindQueue<?>> queues = new CopyOnWriteArrayList<>();
+	private static final List<ErrorListener> errorListeners = new CopyOnWriteArrayList<>();
+
+	private static class Pending<T> {
+		T obj;
+		int attempts;
+		final List<CompletableFuture<T>> futures = new ArrayList<>();
+
+		Pending(T obj) {
+			this.obj = obj;
+		}
+	}
+
+	private final String name;
+	private final Consumer<List<T>> writer;
+	private final Function<T, Integer> idOf;
+	// puts the stored state back into memory for rows given up on
+	private final Consumer<List<T>> restore;
+	private final int maxPending;
+	private final long delayMillis;
+	private final int maxRetries;
+	private final ScheduledExecutorService scheduler;
+
+	// waiting rows: updates by Id, new rows (no Id yet) in the order saved
+	private final LinkedHashMap<Integer, Pending<T>> updates = new LinkedHashMap<>();
+	private final List<Pending<T>> inserts = new ArrayList<>();
+	private ScheduledFuture<?> scheduled;
+	// one flush at a time, whoever asks for it
+	private final Object flushLock = new Object();
+
+	private long saved;
+	private long coalesced;
+	private long flushes;
+	private long written;
+	private long failed;
+
+	public static boolean isEnabled() {
+		return Boolean.parseBoolean(DB.getProperty("writeBehind.enabled", "false"));
+	}
+
+	/*
+	 * writer gets inserts and updates together, like saveOrUpdateAll. restore
+	 * gets the rows given up on: what the views show and the caches hold for
+	 * them may not be what the database has (departments are shown before
+	 * they are written, a failed batch may have committed part of its rows).
+	 */
+	public static <T> WriteBehindQueue<T> create(String name, Consumer<List<T>> writer, Function<T, Integer> idOf,
+			Consumer<List<T>> restore) {
+		WriteBehindQueue<T> queue = new WriteBehindQueue<>(name, writer, idOf, restore,
+				Math.max(1, DB.getIntProperty("writeBehind.maxPending", 200)),
+				DB.getIntProperty("writeBehind.delayMs", 1000), DB.getIntProperty("writeBehind.maxRetries", 3));
+		queues.add(queue);
+		return queue;
+	}
+
+	private WriteBehindQueue(String name, Consumer<List<T>> writer, Function<T, Integer> idOf,
+			Consumer<List<T>> restore, int maxPending, long delayMillis, int maxRetries) {
+		this.name = name;
+		this.writer = writer;
+		this.idOf = idOf;
+		this.restore = restore;
+		this.maxPending = maxPending;
+		this.delayMillis = delayMillis;
+		this.maxRetries = maxRetries;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "write-behind-" + name);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public static void addErrorListener(ErrorListener listener) {
+		errorListeners.add(listener);
+	}
+
+	public static void removeErrorListener(ErrorListener listener) {
+		errorListeners.remove(listener);
+	}
+
+	// writes what every queue has waiting, e.g. before the application closes
+	public static void flushAll() {
+		for (WriteBehindQueue<?> queue : queues)
+			queue.flush();
+	}
+
+	// completes with the row written once it is in the database: obj, or a
+	// later save of the same Id that took its place; null if it was discarded
+	public CompletableFuture<T> enqueue(T obj) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		synchronized (this) {
+			saved++;
+			Integer id = idOf.apply(obj);
+			Pending<T> p = id == null ? null : updates.get(id);
+			if (p != null) {
+				p.obj = obj;
+				coalesced++;
+			}
+			else {
+				p = new Pending<>(obj);
+				if (id == null)
+					inserts.add(p);
+				else
+					updates.put(id, p);
+			}
+			p.futures.add(future);
+			schedule(size() >= maxPending ? 0 : delayMillis);
+		}
+		return future;
+	}
+
+	// drops the waiting save of this Id, e.g. because it is being deleted or
+	// saved straight away; whoever waited on it is told it is done (null)
+	public void discard(Integer id) {
+		Pending<T> p;
+		synchronized (this) {
+			p = updates.remove(id);
+		}
+		if (p != null)
+			complete(p, null);
+	}
+
+	public synchronized int size() {
+		return updates.size() + inserts.size();
+	}
+
+	// guarded by this; an earlier flush is kept, a later one is brought forward
+	private void schedule(long delay) {
+		if (scheduled != null) {
+			if (scheduled.getDelay(TimeUnit.MILLISECONDS) <= delay || !scheduled.cancel(false))
+				return;
+		}
+		scheduled = scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+	}
+
+	// writes everything waiting now, on the calling thread
+	public void flush() {
+		synchronized (flushLock) {
+			List<Pending<T>> batch;
+			synchronized (this) {
+				if (scheduled != null) {
+					scheduled.cancel(false);
+					scheduled = null;
+				}
+				batch = new ArrayList<>(inserts.size() + updates.size());
+				batch.addAll(inserts);
+				batch.addAll(updates.values());
+				inserts.clear();
+				updates.clear();
+				if (batch.isEmpty())
+					return;
+				flushes++;
+			}
+			List<T> rows = new ArrayList<>(batch.size());
+			for (Pending<T> p : batch)
+				rows.add(p.obj);
+			try {
+				writer.accept(rows);
+				for (Pending<T> p : batch)
+					complete(p, p.obj);
+				synchronized (this) {
+					written += batch.size();
+				}
+			} catch (RuntimeException e) {
+				retry(batch, e);
+			}
+		}
+	}
+
+	private void retry(List<Pending<T>> batch, RuntimeException error) {
+		List<Pending<T>> exhausted = new ArrayList<>();
+		int attempts = 0;
+		synchronized (this) {
+			for (Pending<T> p : batch) {
+				p.attempts++;
+				if (p.attempts > maxRetries) {
+					exhausted.add(p);
+					continue;
+				}
+				attempts = Math.max(attempts, p.attempts);
+				// new rows written before the failure have their Id by now
+				Integer id = idOf.apply(p.obj);
+				if (id == null) {
+					inserts.add(p);
+					continue;
+				}
+				Pending<T> newer = updates.get(id);
+				if (newer != null)
+					newer.futures.addAll(p.futures); // saved again meanwhile, that one wins
+				else
+					updates.put(id, p);
+			}
+			if (attempts > 0)
+				schedule(delayMillis << Math.min(attempts, 10));
+		}
+		if (exhausted.isEmpty())
+			return;
+		if (exhausted.size() == 1) {
+			giveUp(exhausted, error);
+			return;
+		}
+		List<Pending<T>> lost = new ArrayList<>();
+		RuntimeException last = error;
+		for (Pending<T> p : exhausted) {
+			try {
+				writer.accept(Collections.singletonList(p.obj));
+				complete(p, p.obj);
+				synchronized (this) {
+					written++;
+				}
+			} catch (RuntimeException e) {
+				lost.add(p);
+				last = e;
+			}
+		}
+		if (!lost.isEmpty())
+			giveUp(lost, last);
+	}
+
+	private void giveUp(List<Pending<T>> lost, RuntimeException error) {
+		synchronized (this) {
+			failed += lost.size();
+		}
+		List<T> rows = new ArrayList<>(lost.size());
+		for (Pending<T> p : lost) {
+			rows.add(p.obj);
+			for (CompletableFuture<T> future : p.futures)
+				future.completeExceptionally(error);
+		}
+		restore.accept(rows);
+		if (errorListeners.isEmpty())
+			System.err.println("Write-behind " + name + ": " + rows.size() + " rows not saved: " + error.getMessage());
+		for (ErrorListener listener : errorListeners)
+			listener.onError(name, rows, error);
+	}
+
+	private static <T> void complete(Pending<T> p, T stored) {
+		for (CompletableFuture<T> future : p.futures)
+			future.complete(stored);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized long getSaved() {
+		return saved;
+	}
+
+	// saves that replaced a waiting one instead of adding a write
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	public synchronized long getFlushes() {
+		return flushes;
+	}
+
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "WriteBehindQueue [name=" + name + ", pending=" + size() + ", saved=" + saved + ", coalesced="
+				+ coalesced + ", flushes=" + flushes + ", written=" + written + ", failed=" + failed + "]";
+	}
+}